@@ -0,0 +1,72 @@
+package models;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of TopicKernel on the incubating Vector API. Each
+ * block is one vector of doubles: the count rows are loaded as int vectors of
+ * the same lane count, widened to doubles, multiplied lane-wise and reduced
+ * to the block sum.
+ *
+ * Compile and run with "--add-modules jdk.incubator.vector"; TopicKernel
+ * falls back to the scalar kernel when this class cannot be loaded.
+ */
+public class VectorTopicKernel
+	extends TopicKernel
+{
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	// Int vectors with as many lanes as DOUBLES
+	private static final VectorSpecies<Integer> INTS = VectorSpecies.of(
+		int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+	@Override
+	public int blockSize()
+	{
+		return DOUBLES.length();
+	}
+
+	@Override
+	public double fill(int numTopics, int[] docTopicRow, double[] alphas,
+		int[] wordTopicRow, double beta, double[] invTopicDenominators,
+		double scale, double[] out, double[] blockSums)
+	{
+		int lanes = DOUBLES.length();
+		int upperBound = DOUBLES.loopBound(numTopics);
+		double sum = 0.0;
+		int tIndex = 0;
+		int b = 0;
+		for (; tIndex < upperBound; tIndex += lanes, b++) {
+			DoubleVector doc = ((DoubleVector) IntVector
+				.fromArray(INTS, docTopicRow, tIndex)
+				.castShape(DOUBLES, 0))
+				.add(DoubleVector.fromArray(DOUBLES, alphas, tIndex));
+			DoubleVector word = ((DoubleVector) IntVector
+				.fromArray(INTS, wordTopicRow, tIndex)
+				.castShape(DOUBLES, 0)).add(beta);
+			DoubleVector pro = doc.mul(word)
+				.mul(DoubleVector.fromArray(DOUBLES, invTopicDenominators,
+					tIndex)).mul(scale);
+			pro.intoArray(out, tIndex);
+			double blockSum = pro.reduceLanes(VectorOperators.ADD);
+			blockSums[b] = blockSum;
+			sum += blockSum;
+		}
+		if (tIndex < numTopics) {
+			double blockSum = 0.0;
+			for (; tIndex < numTopics; tIndex++) {
+				double pro = scale * (docTopicRow[tIndex] + alphas[tIndex])
+					* (wordTopicRow[tIndex] + beta)
+					* invTopicDenominators[tIndex];
+				out[tIndex] = pro;
+				blockSum += pro;
+			}
+			blockSums[b] = blockSum;
+			sum += blockSum;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,430 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import models.ClusteringMonitor;
+import models.GibbsSamplingLDA;
+import models.GibbsSamplingSWB;
+import models.OnlineVBLDA;
+import models.OutOfCoreSWB;
+import models.SamplerMetrics;
+import models.StoppingPolicy;
+import models.TopicKernel;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import utility.CmdArgs;
+import utility.MTRandom;
+import eval.ClusteringEval;
+import eval.CoherenceEval;
+
+/**
+ * Command-line launcher for the topic models and their evaluation.
+ *
+ * -model selects LDA, SWB, Eval (clustering scores of the .theta files in
+ * -dir ending with -prob against -label) or Coherence (UMass and NPMI of the
+ * -twords top words of the files in -dir ending with -prob, by default
+ * "topWords", over the -corpus documents), and -engine the inference engine:
+ *
+ * LDA: gibbs (serial collapsed Gibbs sampling), kernel (serial, with the
+ * TopicKernel weights), parallel (AD-LDA on -nthreads threads), partitioned
+ * (word-partitioned model-parallel sweeps on -nthreads threads) or onlinevb
+ * (online variational Bayes, streaming the corpus).
+ *
+ * SWB: gibbs, kernel or outofcore (corpus and assignments on disk, see
+ * OutOfCoreSWB; -initFile <name>.assignments continues an earlier run).
+ *
+ * With -seed, every engine is reproducible: the parallel LDA sweep switches
+ * to its deterministic mode, and the other engines give each worker a fixed
+ * share of the work. -selfcheck trains a second time and checks that the
+ * outputs are bit-identical.
+ *
+ * With -evalstep and -label, the Gibbs engines score their live sample
+ * against the golden labels every -evalstep iterations (see
+ * ClusteringMonitor) and write the curve to <name>.clustering.csv.
+ *
+ * -update with -model SWB adds the documents of a file to the model of
+ * -corpus and -initFile (e.g. the .corpus and .topicAssignments of an earlier
+ * run or update) and resamples them, with a share of the old documents, for
+ * -nsweeps sweeps instead of retraining (see GibbsSamplingSWB.update);
+ * -maxdocs and -keepprob retire old documents.
+ *
+ * -stopwindow (with -stoptol and -stopevery), -stopchange (with
+ * -stoppatience) and -stoptime end the Gibbs engines early once the
+ * log-likelihood or the assignments settle or the time budget is spent (see
+ * StoppingPolicy); the last sample is written as usual.
+ *
+ * With -metrics or -jmx, the Gibbs engines publish the timings of every
+ * iteration as the MBean models:type=SamplerMetrics,name=<name> (see
+ * SamplerMetrics), e.g. for jconsole; -metrics also appends them to a file.
+ *
+ * Usage: java -cp "bin:lib/*" SWB -model LDA|SWB|Eval|Coherence [options ...]
+ */
+public class SWB
+{
+	private static final List<String> LDA_ENGINES = Arrays.asList("gibbs",
+		"kernel", "parallel", "partitioned", "onlinevb");
+	private static final List<String> SWB_ENGINES = Arrays.asList("gibbs",
+		"kernel", "outofcore");
+
+	public static void main(String[] args)
+	{
+		CmdArgs cmdArgs = new CmdArgs();
+		CmdLineParser parser = new CmdLineParser(cmdArgs);
+		try {
+			parser.parseArgument(args);
+			if (cmdArgs.selfCheck && (cmdArgs.seed == 0))
+				throw new CmdLineException(
+					"Option \"-selfcheck\" needs a \"-seed\"");
+			if (cmdArgs.selfCheck && cmdArgs.engine.equalsIgnoreCase("outofcore")
+				&& (cmdArgs.initTopicAssgns.length() > 0))
+				// The first run moves on the assignments the second would
+				// start from
+				throw new CmdLineException(
+					"Option \"-selfcheck\" cannot be used with \"-initFile\" and engine outofcore");
+			if (cmdArgs.selfCheck && (cmdArgs.stopTime > 0))
+				throw new CmdLineException(
+					"Option \"-selfcheck\" cannot be used with \"-stoptime\"");
+			if ((cmdArgs.updateDocuments.length() > 0)
+				&& (!cmdArgs.model.equalsIgnoreCase("SWB") || (cmdArgs.initTopicAssgns
+					.length() == 0)))
+				throw new CmdLineException(
+					"Option \"-update\" needs \"-model SWB\" and an \"-initFile\"");
+			if ((cmdArgs.updateDocuments.length() > 0)
+				&& ((cmdArgs.evalstep > 0) || (stoppingPolicy(cmdArgs) != null)))
+				throw new CmdLineException(
+					"Option \"-update\" cannot be used with \"-evalstep\" or the stopping options");
+			if ((cmdArgs.optimizeInterval > 0)
+				&& (cmdArgs.niters <= cmdArgs.optimizeBurnIn))
+				throw new CmdLineException("Option \"-optint\" needs \"-niters\" above \"-optburnin\" ("
+					+ cmdArgs.optimizeBurnIn + ")");
+			if ((cmdArgs.evalstep > 0) && (cmdArgs.labelFile.length() == 0))
+				throw new CmdLineException(
+					"Option \"-evalstep\" needs a \"-label\"");
+
+			if (cmdArgs.model.equalsIgnoreCase("LDA")
+				|| cmdArgs.model.equalsIgnoreCase("SWB")) {
+				train(cmdArgs, cmdArgs.expModelName, true);
+				if (cmdArgs.selfCheck && !selfCheck(cmdArgs))
+					System.exit(1);
+			}
+			else if (cmdArgs.model.equalsIgnoreCase("Eval")) {
+				ClusteringEval.evaluate(cmdArgs.labelFile, cmdArgs.dir,
+					cmdArgs.prob);
+			}
+			else if (cmdArgs.model.equalsIgnoreCase("Coherence")) {
+				CoherenceEval.evaluate(cmdArgs.corpus, cmdArgs.dir,
+					cmdArgs.prob.length() > 0 ? cmdArgs.prob : "topWords",
+					cmdArgs.twords);
+			}
+			else {
+				System.out
+					.println("Error: Option \"-model\" must get \"LDA\", \"SWB\", \"Eval\" or \"Coherence\"");
+				help(parser);
+				System.exit(1);
+			}
+		}
+		catch (CmdLineException e) {
+			System.out.println("Error: " + e.getMessage());
+			help(parser);
+			System.exit(1);
+		}
+		catch (Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	private static void train(CmdArgs cmdArgs, String expName,
+		boolean withMetrics)
+		throws Exception
+	{
+		if (cmdArgs.seed != 0)
+			MTRandom.setSeed(cmdArgs.seed);
+		if (cmdArgs.model.equalsIgnoreCase("LDA"))
+			runLDA(cmdArgs, expName, withMetrics);
+		else
+			runSWB(cmdArgs, expName, withMetrics);
+	}
+
+	private static void runLDA(CmdArgs cmdArgs, String expName,
+		boolean withMetrics)
+		throws Exception
+	{
+		String engine = engine(cmdArgs, LDA_ENGINES);
+		boolean binaryTheta = binaryTheta(cmdArgs);
+		if (engine.equals("onlinevb")) {
+			noClusteringMonitor(cmdArgs, engine);
+			noStoppingPolicy(cmdArgs, engine);
+			OnlineVBLDA lda = new OnlineVBLDA(cmdArgs.corpus, cmdArgs.ntopics,
+				cmdArgs.alpha, cmdArgs.beta, cmdArgs.npasses, cmdArgs.twords,
+				expName);
+			lda.batchSize = cmdArgs.batchsize;
+			lda.numThreads = numThreads(cmdArgs);
+			lda.binaryTheta = binaryTheta;
+			lda.inference();
+			return;
+		}
+
+		GibbsSamplingLDA lda = new GibbsSamplingLDA(cmdArgs.corpus,
+			cmdArgs.ntopics, cmdArgs.alpha, cmdArgs.beta, cmdArgs.niters,
+			cmdArgs.twords, expName, cmdArgs.initTopicAssgns,
+			cmdArgs.savestep, cmdArgs.countTableType);
+		if (engine.equals("kernel"))
+			lda.kernel = TopicKernel.create();
+		else if (engine.equals("parallel")) {
+			lda.numThreads = numThreads(cmdArgs);
+			lda.deterministic = cmdArgs.seed != 0;
+		}
+		else if (engine.equals("partitioned")) {
+			lda.numThreads = numThreads(cmdArgs);
+			lda.wordPartitioned = true;
+		}
+		lda.optimizeInterval = cmdArgs.optimizeInterval;
+		lda.optimizeBurnIn = cmdArgs.optimizeBurnIn;
+		lda.stoppingPolicy = stoppingPolicy(cmdArgs);
+		lda.binaryTheta = binaryTheta;
+		lda.metrics = withMetrics ? metrics(cmdArgs, expName) : null;
+		lda.clusteringMonitor = withMetrics ? clusteringMonitor(cmdArgs,
+			lda.folderPath + expName) : null;
+		lda.inference();
+		if (lda.metrics != null)
+			lda.metrics.close();
+		if (lda.clusteringMonitor != null)
+			lda.clusteringMonitor.close();
+	}
+
+	private static void runSWB(CmdArgs cmdArgs, String expName,
+		boolean withMetrics)
+		throws Exception
+	{
+		String engine = engine(cmdArgs, SWB_ENGINES);
+		boolean binaryTheta = binaryTheta(cmdArgs);
+		double[] betas = { cmdArgs.beta, cmdArgs.specialBeta,
+			cmdArgs.backgroundBeta };
+		if (engine.equals("outofcore")) {
+			if (cmdArgs.updateDocuments.length() > 0)
+				throw new CmdLineException(
+					"Option \"-update\" is not supported by engine " + engine);
+			noClusteringMonitor(cmdArgs, engine);
+			noStoppingPolicy(cmdArgs, engine);
+			// <name>.assignments is rewritten on every sweep, so it serves as
+			// the checkpoint; it is only resumed from when given as -initFile,
+			// otherwise a run starts afresh
+			OutOfCoreSWB swb = OutOfCoreSWB.open(cmdArgs.corpus,
+				cmdArgs.ntopics, cmdArgs.alpha, betas, cmdArgs.gamma,
+				cmdArgs.niters, cmdArgs.twords, expName,
+				cmdArgs.initTopicAssgns);
+			swb.binaryTheta = binaryTheta;
+			swb.inference();
+			swb.close();
+			return;
+		}
+
+		GibbsSamplingSWB swb = new GibbsSamplingSWB(cmdArgs.corpus,
+			cmdArgs.ntopics, cmdArgs.alpha, betas, cmdArgs.gamma,
+			cmdArgs.niters, cmdArgs.twords, expName,
+			cmdArgs.initTopicAssgns, cmdArgs.countTableType);
+		if (engine.equals("kernel"))
+			swb.kernel = TopicKernel.create();
+		swb.binaryTheta = binaryTheta;
+		if (cmdArgs.updateDocuments.length() > 0) {
+			swb.rejuvenationRate = cmdArgs.rejuvenation;
+			swb.maxDocuments = cmdArgs.maxDocuments;
+			swb.documentKeepProbability = cmdArgs.keepProbability;
+			swb.update(cmdArgs.updateDocuments, cmdArgs.nsweeps);
+			return;
+		}
+		swb.savestep = cmdArgs.savestep;
+		swb.optimizeInterval = cmdArgs.optimizeInterval;
+		swb.optimizeBurnIn = cmdArgs.optimizeBurnIn;
+		swb.stoppingPolicy = stoppingPolicy(cmdArgs);
+		swb.metrics = withMetrics ? metrics(cmdArgs, expName) : null;
+		swb.clusteringMonitor = withMetrics ? clusteringMonitor(cmdArgs,
+			swb.folderPath + expName) : null;
+		swb.inference();
+		if (swb.metrics != null)
+			swb.metrics.close();
+		if (swb.clusteringMonitor != null)
+			swb.clusteringMonitor.close();
+	}
+
+	/**
+	 * Train again under another experiment name and compare the outputs byte
+	 * by byte with those of the first run; the outputs of the second run are
+	 * deleted
+	 */
+	private static boolean selfCheck(CmdArgs cmdArgs)
+		throws Exception
+	{
+		String checkName = cmdArgs.expModelName + "-selfcheck";
+		System.out.println("Self-check: training again as " + checkName);
+		train(cmdArgs, checkName, false);
+
+		File folder = new File(cmdArgs.corpus).getAbsoluteFile()
+			.getParentFile();
+		int numFiles = 0, numDifferent = 0;
+		for (File file : folder.listFiles()) {
+			String name = file.getName();
+			if (!name.startsWith(checkName + ".")
+				&& !name.startsWith(checkName + "-"))
+				continue;
+			// The parameter files differ in the experiment name
+			String suffix = name.substring(checkName.length());
+			if (!suffix.equals(".paras")) {
+				File original = new File(folder, cmdArgs.expModelName + suffix);
+				numFiles++;
+				if (!sameContents(file, original)) {
+					System.out.println("Self-check: " + original + " differs");
+					numDifferent++;
+				}
+			}
+			file.delete();
+		}
+		System.out.println("Self-check: " + (numFiles - numDifferent) + " of "
+			+ numFiles + " output files identical");
+		return (numFiles > 0) && (numDifferent == 0);
+	}
+
+	private static boolean sameContents(File file1, File file2)
+		throws IOException
+	{
+		if (!file2.exists() || (file1.length() != file2.length()))
+			return false;
+		InputStream in1 = new BufferedInputStream(new FileInputStream(file1));
+		InputStream in2 = new BufferedInputStream(new FileInputStream(file2));
+		try {
+			byte[] buffer1 = new byte[1 << 16], buffer2 = new byte[1 << 16];
+			for (int n; (n = in1.read(buffer1)) > 0;) {
+				int m = 0;
+				while (m < n) {
+					int read = in2.read(buffer2, m, n - m);
+					if (read < 0)
+						return false;
+					m += read;
+				}
+				for (int i = 0; i < n; i++)
+					if (buffer1[i] != buffer2[i])
+						return false;
+			}
+			return true;
+		}
+		finally {
+			in1.close();
+			in2.close();
+		}
+	}
+
+	/**
+	 * The selected engine; the options are checked before the corpus is read
+	 */
+	private static String engine(CmdArgs cmdArgs, List<String> engines)
+		throws CmdLineException
+	{
+		String engine = cmdArgs.engine.toLowerCase();
+		if (!engines.contains(engine))
+			throw new CmdLineException("Option \"-engine\" must get one of "
+				+ engines + " for " + cmdArgs.model);
+		return engine;
+	}
+
+	private static int numThreads(CmdArgs cmdArgs)
+	{
+		return cmdArgs.nthreads > 0 ? cmdArgs.nthreads : Runtime.getRuntime()
+			.availableProcessors();
+	}
+
+	private static boolean binaryTheta(CmdArgs cmdArgs)
+		throws CmdLineException
+	{
+		if (cmdArgs.thetaFormat.equalsIgnoreCase("binary"))
+			return true;
+		if (cmdArgs.thetaFormat.equalsIgnoreCase("text"))
+			return false;
+		throw new CmdLineException(
+			"Option \"-thetaformat\" must get \"text\" or \"binary\"");
+	}
+
+	/**
+	 * The metrics of -metrics and -jmx, registered with the platform MBean
+	 * server under the experiment name
+	 */
+	private static SamplerMetrics metrics(CmdArgs cmdArgs, String expName)
+		throws Exception
+	{
+		if ((cmdArgs.metricsFile.length() == 0) && !cmdArgs.jmx)
+			return null;
+		SamplerMetrics metrics = cmdArgs.metricsFile.length() > 0
+			? new SamplerMetrics(cmdArgs.metricsFile) : new SamplerMetrics();
+		metrics.register(expName);
+		return metrics;
+	}
+
+	/**
+	 * The policies of -stopwindow, -stopchange and -stoptime, stopping at the
+	 * first of them; null if none is given
+	 */
+	private static StoppingPolicy stoppingPolicy(CmdArgs cmdArgs)
+		throws CmdLineException
+	{
+		List<StoppingPolicy> policies = new ArrayList<StoppingPolicy>();
+		if (cmdArgs.stopWindow > 0) {
+			if (cmdArgs.stopEvery <= 0)
+				throw new CmdLineException(
+					"Option \"-stopevery\" must get a positive number");
+			policies.add(StoppingPolicy.logLikelihoodWindow(cmdArgs.stopWindow,
+				cmdArgs.stopTolerance, cmdArgs.stopEvery));
+		}
+		if (cmdArgs.stopChange > 0)
+			policies.add(StoppingPolicy.changeRate(cmdArgs.stopChange,
+				Math.max(1, cmdArgs.stopPatience)));
+		if (cmdArgs.stopTime > 0)
+			policies.add(StoppingPolicy.wallClock(cmdArgs.stopTime * 1000L));
+		if (policies.size() == 0)
+			return null;
+		if (policies.size() == 1)
+			return policies.get(0);
+		return StoppingPolicy.anyOf(policies
+			.toArray(new StoppingPolicy[policies.size()]));
+	}
+
+	private static ClusteringMonitor clusteringMonitor(CmdArgs cmdArgs,
+		String pathPrefix)
+		throws Exception
+	{
+		if (cmdArgs.evalstep <= 0)
+			return null;
+		return new ClusteringMonitor(cmdArgs.labelFile, cmdArgs.evalstep,
+			pathPrefix + ".clustering.csv");
+	}
+
+	private static void noClusteringMonitor(CmdArgs cmdArgs, String engine)
+		throws CmdLineException
+	{
+		if (cmdArgs.evalstep > 0)
+			throw new CmdLineException("Option \"-evalstep\" is not supported by engine "
+				+ engine);
+	}
+
+	private static void noStoppingPolicy(CmdArgs cmdArgs, String engine)
+		throws CmdLineException
+	{
+		if ((cmdArgs.stopWindow > 0) || (cmdArgs.stopChange > 0)
+			|| (cmdArgs.stopTime > 0))
+			throw new CmdLineException("Options \"-stopwindow\", \"-stopchange\" and \"-stoptime\" are not supported by engine "
+				+ engine);
+	}
+
+	public static void help(CmdLineParser parser)
+	{
+		System.out.println("java -cp \"bin:lib/*\" SWB [options ...]");
+		parser.printUsage(System.out);
+	}
+}
@@ -2,26 +2,48 @@ package eval;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import utility.BinaryTheta;
 import utility.FuncUtils;
+import utility.MappedFile;
 
 /**
  * jLDADMM: A Java package for the LDA and DMM topic models
- * 
+ *
  * Implementation of the Purity and NMI clustering evaluation scores, as
  * described in Section 16.3 in:
- * 
+ *
  * Christopher D. Manning, Prabhakar Raghavan, and Hinrich Sch¨utze. 2008.
  * Introduction to Information Retrieval. Cambridge University Press.
- * 
+ *
+ * together with the Adjusted Rand Index (Hubert and Arabie, 1985) and the
+ * V-measure (Rosenberg and Hirschberg, 2007). All scores are computed from
+ * one contingency matrix of output clusters by golden labels, built in a
+ * single pass over the documents.
+ *
+ * evaluate() scores a folder of document-topic files (text .theta or binary
+ * .theta.bin, see utility.BinaryTheta) concurrently against golden labels
+ * read once; only the most probable topic of every document is kept.
+ *
  * @author: Dat Quoc Nguyen
  */
 
@@ -31,8 +53,17 @@ public class ClusteringEval
 
 	String pathGoldenLabelsFile;
 
-	HashMap<String, Set<Integer>> goldenClusers;
-	HashMap<String, Set<Integer>> outputClusers;
+	// Golden label and output cluster of every document, numbered from 0
+	int[] goldenLabels;
+	int[] outputLabels;
+	int numGoldenLabels;
+	int numOutputLabels;
+
+	// numOutputLabels * numGoldenLabels matrix
+	// Number of documents of every output cluster and golden label
+	long[][] contingency;
+	long[] outputSizes;
+	long[] goldenSizes;
 
 	int numDocs;
 
@@ -43,11 +74,29 @@ public class ClusteringEval
 		pathDocTopicProsFile = inPathDocTopicProsFile;
 		pathGoldenLabelsFile = inPathGoldenLabelsFile;
 
-		goldenClusers = new HashMap<String, Set<Integer>>();
-		outputClusers = new HashMap<String, Set<Integer>>();
-
 		readGoldenLabelsFile();
 		readDocTopicProsFile();
+		buildContingency();
+	}
+
+	/**
+	 * Evaluate the given output clusters (e.g. most probable topics) against
+	 * the given golden labels; both are arbitrary non-negative IDs
+	 */
+	public ClusteringEval(int[] inGoldenLabels, int[] inOutputLabels)
+		throws Exception
+	{
+		if (inGoldenLabels.length != inOutputLabels.length) {
+			System.out
+				.println("Error: the number of documents is different to the number of labels!");
+			throw new Exception();
+		}
+		numDocs = inGoldenLabels.length;
+		goldenLabels = inGoldenLabels.clone();
+		numGoldenLabels = renumber(goldenLabels);
+		outputLabels = inOutputLabels.clone();
+		numOutputLabels = renumber(outputLabels);
+		buildContingency();
 	}
 
 	public void readGoldenLabelsFile()
@@ -55,26 +104,42 @@ public class ClusteringEval
 	{
 		System.out
 			.println("Reading golden labels file " + pathGoldenLabelsFile);
+		goldenLabels = readGoldenLabels(pathGoldenLabelsFile);
+		numDocs = goldenLabels.length;
+		numGoldenLabels = renumber(goldenLabels);
+	}
 
+	/**
+	 * The golden label of every document (one label per line), numbered in
+	 * order of first appearance
+	 */
+	public static int[] readGoldenLabels(String pathGoldenLabelsFile)
+		throws IOException
+	{
+		HashMap<String, Integer> labelIds = new HashMap<String, Integer>();
+		int[] labels = new int[1024];
 		int id = 0;
 
-		BufferedReader br = null;
+		BufferedReader br = new BufferedReader(new FileReader(
+			pathGoldenLabelsFile));
 		try {
-			br = new BufferedReader(new FileReader(pathGoldenLabelsFile));
 			for (String label; (label = br.readLine()) != null;) {
 				label = label.trim();
-				Set<Integer> ids = new HashSet<Integer>();
-				if (goldenClusers.containsKey(label))
-					ids = goldenClusers.get(label);
-				ids.add(id);
-				goldenClusers.put(label, ids);
+				Integer labelId = labelIds.get(label);
+				if (labelId == null) {
+					labelId = labelIds.size();
+					labelIds.put(label, labelId);
+				}
+				if (id == labels.length)
+					labels = Arrays.copyOf(labels, 2 * id);
+				labels[id] = labelId;
 				id += 1;
 			}
 		}
-		catch (Exception e) {
-			e.printStackTrace();
+		finally {
+			br.close();
 		}
-		numDocs = id;
+		return Arrays.copyOf(labels, id);
 	}
 
 	public void readDocTopicProsFile()
@@ -82,143 +147,481 @@ public class ClusteringEval
 	{
 		System.out.println("Reading document-to-topic distribution file "
 			+ pathDocTopicProsFile);
+		outputLabels = readMostProbableTopics(pathDocTopicProsFile);
+		if (numDocs != outputLabels.length) {
+			System.out
+				.println("Error: the number of documents is different to the number of labels!");
+			throw new Exception();
+		}
+		numOutputLabels = renumber(outputLabels);
+	}
 
-		HashMap<Integer, String> docLabelOutput = new HashMap<Integer, String>();
-
-		int docIndex = 0;
-
-		BufferedReader br = null;
+	/**
+	 * The most probable topic of every document of a text or binary
+	 * document-topic file (-1 if all its probabilities are 0); ties go to the
+	 * first topic
+	 */
+	public static int[] readMostProbableTopics(String pathDocTopicProsFile)
+		throws IOException
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(
+			pathDocTopicProsFile));
+		boolean binary;
 		try {
-			br = new BufferedReader(new FileReader(pathDocTopicProsFile));
+			binary = (in.available() >= 4) && (in.readInt() == BinaryTheta.MAGIC);
+		}
+		finally {
+			in.close();
+		}
+		if (binary)
+			return readBinaryMostProbableTopics(pathDocTopicProsFile);
+		InputStream text = new FileInputStream(pathDocTopicProsFile);
+		try {
+			return new ThetaScanner(text).mostProbableTopics();
+		}
+		finally {
+			text.close();
+		}
+	}
 
-			for (String docTopicProbs; (docTopicProbs = br.readLine()) != null;) {
-				String[] pros = docTopicProbs.trim().split("\\s+");
-				double maxPro = 0.0;
+	private static int[] readBinaryMostProbableTopics(String path)
+		throws IOException
+	{
+		MappedFile file = new MappedFile(path, false);
+		try {
+			ByteBuffer header = file.window(0, 12);
+			header.getInt();
+			int numDocuments = header.getInt();
+			int numTopics = header.getInt();
+			if (file.size() != 12 + 4L * numDocuments * numTopics)
+				throw new IOException(path + " is truncated");
+
+			int[] topics = new int[numDocuments];
+			float[] row = new float[numTopics];
+			long position = 12;
+			for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+				FloatBuffer buffer = file.window(position, 4 * numTopics)
+					.asFloatBuffer();
+				buffer.get(row);
+				position += 4L * numTopics;
+				float maxPro = 0;
 				int index = -1;
-				for (int topicIndex = 0; topicIndex < pros.length; topicIndex++) {
-					double pro = new Double(pros[topicIndex]);
-					if (pro > maxPro) {
-						maxPro = pro;
+				for (int topicIndex = 0; topicIndex < numTopics; topicIndex++)
+					if (row[topicIndex] > maxPro) {
+						maxPro = row[topicIndex];
 						index = topicIndex;
 					}
-				}
-				docLabelOutput.put(docIndex,
-					"Topic_" + new Integer(index).toString());
-				docIndex++;
+				topics[dIndex] = index;
 			}
+			return topics;
 		}
-		catch (Exception e) {
-			e.printStackTrace();
+		finally {
+			file.close();
 		}
+	}
 
-		if (numDocs != docIndex) {
-			System.out
-				.println("Error: the number of documents is different to the number of labels!");
-			throw new Exception();
+	/**
+	 * Streams a text document-topic file and keeps the argmax of every line.
+	 *
+	 * Numbers are not converted to doubles: every number is read as an exact
+	 * decimal m * 10^e with m normalized to 18 digits, which orders the
+	 * numbers of a line as Double.parseDouble would (up to values closer
+	 * than the precision of a double).
+	 */
+	static class ThetaScanner
+	{
+		private static final long MIN_MANTISSA = 100000000000000000L;
+
+		private final InputStream in;
+		private final byte[] buffer = new byte[1 << 16];
+		private int position, limit;
+
+		// The number just read
+		private long mantissa;
+		private int exponent;
+
+		ThetaScanner(InputStream inStream)
+		{
+			in = inStream;
 		}
 
-		for (Integer id : docLabelOutput.keySet()) {
-			String label = docLabelOutput.get(id);
-			Set<Integer> ids = new HashSet<Integer>();
-			if (outputClusers.containsKey(label))
-				ids = outputClusers.get(label);
-			ids.add(id);
-			outputClusers.put(label, ids);
+		private int next()
+			throws IOException
+		{
+			if (position == limit) {
+				limit = in.read(buffer);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			return buffer[position++];
+		}
+
+		int[] mostProbableTopics()
+			throws IOException
+		{
+			int[] topics = new int[1024];
+			int numDocs = 0;
+			long maxMantissa = 0;
+			int maxExponent = 0, index = -1, topicIndex = 0;
+			boolean lineEmpty = true;
+			for (int c = next();;) {
+				if ((c == '\n') || (c == -1)) {
+					if (!lineEmpty) {
+						if (numDocs == topics.length)
+							topics = Arrays.copyOf(topics, 2 * numDocs);
+						topics[numDocs++] = index;
+					}
+					if (c == -1)
+						break;
+					maxMantissa = 0;
+					maxExponent = 0;
+					index = -1;
+					topicIndex = 0;
+					lineEmpty = true;
+					c = next();
+				}
+				else if ((c == ' ') || (c == '\t') || (c == '\r')) {
+					c = next();
+				}
+				else {
+					c = readNumber(c);
+					// Greater than the maximum so far (which starts at 0)
+					if ((mantissa > 0)
+						&& ((maxMantissa == 0) || (exponent > maxExponent) || ((exponent == maxExponent) && (mantissa > maxMantissa)))) {
+						maxMantissa = mantissa;
+						maxExponent = exponent;
+						index = topicIndex;
+					}
+					topicIndex++;
+					lineEmpty = false;
+				}
+			}
+			return Arrays.copyOf(topics, numDocs);
 		}
 
+		/**
+		 * Read the number starting with character c into mantissa and
+		 * exponent (mantissa 0 for zero or negative numbers)
+		 *
+		 * @return the character after the number
+		 */
+		private int readNumber(int c)
+			throws IOException
+		{
+			boolean negative = false;
+			if ((c == '-') || (c == '+')) {
+				negative = c == '-';
+				c = next();
+			}
+			long m = 0;
+			int e = 0;
+			boolean point = false;
+			for (;; c = next()) {
+				if ((c >= '0') && (c <= '9')) {
+					if (m < MIN_MANTISSA) {
+						m = 10 * m + (c - '0');
+						if (point)
+							e--;
+					}
+					else if (!point) {
+						// Digits beyond the precision only scale the number
+						e++;
+					}
+				}
+				else if ((c == '.') && !point) {
+					point = true;
+				}
+				else {
+					break;
+				}
+			}
+			if ((c == 'E') || (c == 'e')) {
+				c = next();
+				boolean negativeExponent = false;
+				if ((c == '-') || (c == '+')) {
+					negativeExponent = c == '-';
+					c = next();
+				}
+				int exp = 0;
+				for (; (c >= '0') && (c <= '9'); c = next())
+					exp = Math.min(10 * exp + (c - '0'), 100000);
+				e += negativeExponent ? -exp : exp;
+			}
+			else if ((c != ' ') && (c != '\t') && (c != '\r') && (c != '\n')
+				&& (c != -1)) {
+				throw new IOException("Illegal number in document-topic file");
+			}
+			if (negative || (m == 0)) {
+				mantissa = 0;
+				exponent = 0;
+				return c;
+			}
+			while (m < MIN_MANTISSA) {
+				m *= 10;
+				e--;
+			}
+			mantissa = m;
+			exponent = e;
+			return c;
+		}
 	}
 
-	public double computePurity()
+	/**
+	 * Number the distinct values of labels 0, 1, ... in order of first
+	 * appearance, so that no cluster is empty
+	 *
+	 * @return the number of distinct values
+	 */
+	static int renumber(int[] labels)
 	{
-		int count = 0;
-		for (String label : outputClusers.keySet()) {
-			Set<Integer> docs = outputClusers.get(label);
-			int correctAssignedDocNum = 0;
-			for (String goldenLabel : goldenClusers.keySet()) {
-				Set<Integer> goldenDocs = goldenClusers.get(goldenLabel);
-				Set<Integer> outputDocs = new HashSet<Integer>(docs);
-				outputDocs.retainAll(goldenDocs);
-				if (outputDocs.size() >= correctAssignedDocNum)
-					correctAssignedDocNum = outputDocs.size();
+		int min = 0, max = 0;
+		for (int label : labels) {
+			min = Math.min(min, label);
+			max = Math.max(max, label);
+		}
+		if ((long) max - min < 4L * labels.length + 1024) {
+			// Small range: map through an array instead of boxing
+			int[] ids = new int[max - min + 1];
+			Arrays.fill(ids, -1);
+			int numIds = 0;
+			for (int i = 0; i < labels.length; i++) {
+				int slot = labels[i] - min;
+				if (ids[slot] < 0)
+					ids[slot] = numIds++;
+				labels[i] = ids[slot];
 			}
-			count += correctAssignedDocNum;
+			return numIds;
+		}
+
+		HashMap<Integer, Integer> ids = new HashMap<Integer, Integer>();
+		for (int i = 0; i < labels.length; i++) {
+			Integer id = ids.get(labels[i]);
+			if (id == null) {
+				id = ids.size();
+				ids.put(labels[i], id);
+			}
+			labels[i] = id;
+		}
+		return ids.size();
+	}
+
+	void buildContingency()
+	{
+		contingency = new long[numOutputLabels][numGoldenLabels];
+		outputSizes = new long[numOutputLabels];
+		goldenSizes = new long[numGoldenLabels];
+		for (int i = 0; i < numDocs; i++) {
+			contingency[outputLabels[i]][goldenLabels[i]]++;
+			outputSizes[outputLabels[i]]++;
+			goldenSizes[goldenLabels[i]]++;
 		}
-		double value = count * 1.0 / numDocs;
+	}
+
+	public double computePurity()
+	{
+		double value = purity();
 		System.out.println("\tPurity accuracy: " + value);
 		return value;
 	}
 
 	public double computeNMIscore()
+	{
+		double value = nmi();
+		System.out.println("\tNMI score: " + value);
+		return value;
+	}
+
+	public double computeARIscore()
+	{
+		double value = ari();
+		System.out.println("\tARI score: " + value);
+		return value;
+	}
+
+	public double computeVmeasure()
+	{
+		double value = vmeasure();
+		System.out.println("\tV-measure: " + value);
+		return value;
+	}
+
+	/**
+	 * Purity, NMI, ARI and V-measure, without printing
+	 */
+	public double[] scores()
+	{
+		return new double[] { purity(), nmi(), ari(), vmeasure() };
+	}
+
+	double purity()
+	{
+		long count = 0;
+		for (int k = 0; k < numOutputLabels; k++) {
+			long correctAssignedDocNum = 0;
+			for (int c = 0; c < numGoldenLabels; c++)
+				correctAssignedDocNum = Math.max(correctAssignedDocNum,
+					contingency[k][c]);
+			count += correctAssignedDocNum;
+		}
+		return count * 1.0 / numDocs;
+	}
+
+	double nmi()
+	{
+		return 2 * mutualInformation()
+			/ (entropy(outputSizes) + entropy(goldenSizes));
+	}
+
+	double ari()
+	{
+		double index = 0.0;
+		for (int k = 0; k < numOutputLabels; k++)
+			for (int c = 0; c < numGoldenLabels; c++)
+				index += pairs(contingency[k][c]);
+		double outputPairs = 0.0, goldenPairs = 0.0;
+		for (long size : outputSizes)
+			outputPairs += pairs(size);
+		for (long size : goldenSizes)
+			goldenPairs += pairs(size);
+		double expectedIndex = outputPairs * goldenPairs / pairs(numDocs);
+		double maxIndex = (outputPairs + goldenPairs) / 2;
+		// Both partitions trivial (all singletons or one cluster)
+		return maxIndex == expectedIndex ? 1.0 : (index - expectedIndex)
+			/ (maxIndex - expectedIndex);
+	}
+
+	double vmeasure()
+	{
+		double mutualInformation = mutualInformation();
+		double goldenEntropy = entropy(goldenSizes);
+		double outputEntropy = entropy(outputSizes);
+		// H(C|K) = H(C) - I(C;K), H(K|C) = H(K) - I(C;K)
+		double homogeneity = goldenEntropy == 0 ? 1.0 : mutualInformation
+			/ goldenEntropy;
+		double completeness = outputEntropy == 0 ? 1.0 : mutualInformation
+			/ outputEntropy;
+		return homogeneity + completeness == 0 ? 0.0 : 2 * homogeneity
+			* completeness / (homogeneity + completeness);
+	}
+
+	double mutualInformation()
 	{
 		double MIscore = 0.0;
-		for (String label : outputClusers.keySet()) {
-			Set<Integer> docs = outputClusers.get(label);
-			for (String goldenLabel : goldenClusers.keySet()) {
-				Set<Integer> goldenDocs = goldenClusers.get(goldenLabel);
-				Set<Integer> outputDocs = new HashSet<Integer>(docs);
-				outputDocs.retainAll(goldenDocs);
-				double numCorrectAssignedDocs = outputDocs.size() * 1.0;
+		for (int k = 0; k < numOutputLabels; k++) {
+			for (int c = 0; c < numGoldenLabels; c++) {
+				double numCorrectAssignedDocs = contingency[k][c];
 				if (numCorrectAssignedDocs == 0.0)
 					continue;
 				MIscore += (numCorrectAssignedDocs / numDocs)
 					* Math.log(numCorrectAssignedDocs * numDocs
-						/ (docs.size() * goldenDocs.size()));
+						/ (outputSizes[k] * (double) goldenSizes[c]));
 			}
-
-		}
-		double entropy = 0.0;
-		for (String label : outputClusers.keySet()) {
-			Set<Integer> docs = outputClusers.get(label);
-			entropy += (-1.0 * docs.size() / numDocs)
-				* Math.log(1.0 * docs.size() / numDocs);
 		}
+		return MIscore;
+	}
 
-		for (String label : goldenClusers.keySet()) {
-			Set<Integer> docs = goldenClusers.get(label);
-			entropy += (-1.0 * docs.size() / numDocs)
-				* Math.log(1.0 * docs.size() / numDocs);
-		}
+	double entropy(long[] sizes)
+	{
+		double entropy = 0.0;
+		for (long size : sizes)
+			if (size > 0)
+				entropy += (-1.0 * size / numDocs)
+					* Math.log(1.0 * size / numDocs);
+		return entropy;
+	}
 
-		double value = 2 * MIscore / entropy;
-		System.out.println("\tNMI score: " + value);
-		return value;
+	static double pairs(long n)
+	{
+		return n * (n - 1) / 2.0;
 	}
 
 	public static void evaluate(String pathGoldenLabelsFile,
 		String pathToFolderOfDocTopicProsFiles, String suffix)
 		throws Exception
 	{
-		BufferedWriter writer = new BufferedWriter(new FileWriter(
-			pathToFolderOfDocTopicProsFiles + "/" + suffix + ".PurityNMI"));
-		writer.write("Golden-labels in: " + pathGoldenLabelsFile + "\n\n");
-		File[] files = new File(pathToFolderOfDocTopicProsFiles).listFiles();
-
-		List<Double> purity = new ArrayList<Double>(), nmi = new ArrayList<Double>();
-		for (File file : files) {
-			if (!file.getName().endsWith(suffix))
-				continue;
-			writer.write("Results for: " + file.getAbsolutePath() + "\n");
-			ClusteringEval dce = new ClusteringEval(pathGoldenLabelsFile,
-				file.getAbsolutePath());
-			double value = dce.computePurity();
-			writer.write("\tPurity: " + value + "\n");
-			purity.add(value);
-			value = dce.computeNMIscore();
-			writer.write("\tNMI: " + value + "\n");
-			nmi.add(value);
-		}
-		if (purity.size() == 0 || nmi.size() == 0) {
+		System.out
+			.println("Reading golden labels file " + pathGoldenLabelsFile);
+		final int[] golden = readGoldenLabels(pathGoldenLabelsFile);
+
+		List<File> files = new ArrayList<File>();
+		for (File file : new File(pathToFolderOfDocTopicProsFiles).listFiles())
+			if (file.getName().endsWith(suffix))
+				files.add(file);
+		if (files.size() == 0) {
 			System.out.println("Error: There is no file ending with " + suffix);
 			throw new Exception();
 		}
+		File[] sorted = files.toArray(new File[files.size()]);
+		Arrays.sort(sorted);
+
+		// Every file is read and scored by its own task; the results are
+		// reported in file order
+		ExecutorService pool = Executors.newFixedThreadPool(
+			Math.min(sorted.length, Runtime.getRuntime().availableProcessors()),
+			new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable task)
+				{
+					Thread thread = new Thread(task, "ClusteringEval");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+		for (final File file : sorted)
+			results.add(pool.submit(new Callable<double[]>()
+			{
+				@Override
+				public double[] call()
+					throws Exception
+				{
+					int[] output = readMostProbableTopics(file.getAbsolutePath());
+					return new ClusteringEval(golden, output).scores();
+				}
+			}));
 
-		double[] purityValues = new double[purity.size()];
-		double[] nmiValues = new double[nmi.size()];
-
-		for (int i = 0; i < purity.size(); i++)
-			purityValues[i] = purity.get(i).doubleValue();
-		for (int i = 0; i < nmi.size(); i++)
-			nmiValues[i] = nmi.get(i).doubleValue();
+		BufferedWriter writer = new BufferedWriter(new FileWriter(
+			pathToFolderOfDocTopicProsFiles + "/" + suffix + ".PurityNMI"));
+		writer.write("Golden-labels in: " + pathGoldenLabelsFile + "\n\n");
+		double[] purityValues = new double[sorted.length];
+		double[] nmiValues = new double[sorted.length];
+		double[] ariValues = new double[sorted.length];
+		double[] vmeasureValues = new double[sorted.length];
+		try {
+			for (int i = 0; i < sorted.length; i++) {
+				double[] scores;
+				try {
+					scores = results.get(i).get();
+				}
+				catch (ExecutionException e) {
+					System.out.println("Error: cannot evaluate " + sorted[i]);
+					throw (Exception) e.getCause();
+				}
+				purityValues[i] = scores[0];
+				nmiValues[i] = scores[1];
+				ariValues[i] = scores[2];
+				vmeasureValues[i] = scores[3];
+
+				System.out.println("Results for: " + sorted[i].getAbsolutePath());
+				System.out.println("\tPurity accuracy: " + scores[0]);
+				System.out.println("\tNMI score: " + scores[1]);
+				System.out.println("\tARI score: " + scores[2]);
+				System.out.println("\tV-measure: " + scores[3]);
+
+				writer.write("Results for: " + sorted[i].getAbsolutePath() + "\n");
+				writer.write("\tPurity: " + scores[0] + "\n");
+				writer.write("\tNMI: " + scores[1] + "\n");
+				writer.write("\tARI: " + scores[2] + "\n");
+				writer.write("\tV-measure: " + scores[3] + "\n");
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
 
 		writer.write("\n---\nMean purity: " + FuncUtils.mean(purityValues)
 			+ ", standard deviation: " + FuncUtils.stddev(purityValues));
@@ -226,12 +629,24 @@ public class ClusteringEval
 		writer.write("\nMean NMI: " + FuncUtils.mean(nmiValues)
 			+ ", standard deviation: " + FuncUtils.stddev(nmiValues));
 
+		writer.write("\nMean ARI: " + FuncUtils.mean(ariValues)
+			+ ", standard deviation: " + FuncUtils.stddev(ariValues));
+
+		writer.write("\nMean V-measure: " + FuncUtils.mean(vmeasureValues)
+			+ ", standard deviation: " + FuncUtils.stddev(vmeasureValues));
+
 		System.out.println("---\nMean purity: " + FuncUtils.mean(purityValues)
 			+ ", standard deviation: " + FuncUtils.stddev(purityValues));
 
 		System.out.println("Mean NMI: " + FuncUtils.mean(nmiValues)
 			+ ", standard deviation: " + FuncUtils.stddev(nmiValues));
 
+		System.out.println("Mean ARI: " + FuncUtils.mean(ariValues)
+			+ ", standard deviation: " + FuncUtils.stddev(ariValues));
+
+		System.out.println("Mean V-measure: " + FuncUtils.mean(vmeasureValues)
+			+ ", standard deviation: " + FuncUtils.stddev(vmeasureValues));
+
 		writer.close();
 	}
 
@@ -0,0 +1,362 @@
+package eval;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import utility.FuncUtils;
+
+/**
+ * Topic coherence of the .topWords outputs of the topic models: UMass
+ * (Mimno et al., 2011) and NPMI (Bouma, 2009; Lau et al., 2014) with
+ * document co-occurrence, over a reference corpus (usually the training
+ * corpus, one document per line).
+ *
+ * The reference corpus is indexed once: every word gets the sorted IDs of
+ * the documents containing it, and the co-document frequency of two words
+ * is the size of the intersection of their postings. The topics of all
+ * files are scored concurrently. Words missing from the reference corpus
+ * are left out of the pairs.
+ */
+
+public class CoherenceEval
+{
+	int numDocs;
+
+	HashMap<String, Integer> word2Id;
+	// Sorted document IDs of every word
+	int[][] postings;
+
+	public CoherenceEval(String pathToReferenceCorpus)
+		throws IOException
+	{
+		System.out.println("Indexing reference corpus " + pathToReferenceCorpus);
+
+		word2Id = new HashMap<String, Integer>();
+		postings = new int[1024][];
+		int[] postingLengths = new int[1024];
+		int[] lastDocs = new int[1024];
+
+		BufferedReader br = new BufferedReader(new FileReader(
+			pathToReferenceCorpus));
+		try {
+			for (String doc; (doc = br.readLine()) != null;) {
+				if (doc.trim().length() == 0)
+					continue;
+				for (String word : doc.trim().split("\\s+")) {
+					Integer id = word2Id.get(word);
+					if (id == null) {
+						id = word2Id.size();
+						word2Id.put(word, id);
+						if (id == postings.length) {
+							postings = Arrays.copyOf(postings, 2 * id);
+							postingLengths = Arrays.copyOf(postingLengths, 2 * id);
+							lastDocs = Arrays.copyOf(lastDocs, 2 * id);
+						}
+						postings[id] = new int[4];
+						lastDocs[id] = -1;
+					}
+					if (lastDocs[id] == numDocs)
+						continue;
+					lastDocs[id] = numDocs;
+					if (postingLengths[id] == postings[id].length)
+						postings[id] = Arrays.copyOf(postings[id],
+							2 * postingLengths[id]);
+					postings[id][postingLengths[id]++] = numDocs;
+				}
+				numDocs++;
+			}
+		}
+		finally {
+			br.close();
+		}
+
+		postings = Arrays.copyOf(postings, word2Id.size());
+		for (int id = 0; id < postings.length; id++)
+			postings[id] = Arrays.copyOf(postings[id], postingLengths[id]);
+		System.out.println("\t" + numDocs + " documents, " + postings.length
+			+ " word types");
+	}
+
+	/**
+	 * Number of documents containing the word, 0 if it is unknown
+	 */
+	public int documentFrequency(String word)
+	{
+		Integer id = word2Id.get(word);
+		return id == null ? 0 : postings[id].length;
+	}
+
+	/**
+	 * Number of documents containing both words
+	 */
+	public int coDocumentFrequency(String word1, String word2)
+	{
+		Integer id1 = word2Id.get(word1), id2 = word2Id.get(word2);
+		if ((id1 == null) || (id2 == null))
+			return 0;
+		return intersectionSize(postings[id1], postings[id2]);
+	}
+
+	/**
+	 * Size of the intersection of two sorted arrays: a linear merge for
+	 * similar lengths, galloping search of the longer array otherwise
+	 */
+	static int intersectionSize(int[] a, int[] b)
+	{
+		if (a.length > b.length) {
+			int[] swap = a;
+			a = b;
+			b = swap;
+		}
+		int count = 0;
+		if (16 * a.length < b.length) {
+			int low = 0;
+			for (int value : a) {
+				// Gallop to a range of b containing value, then bisect it
+				int step = 1, high = low;
+				while ((high < b.length) && (b[high] < value)) {
+					low = high + 1;
+					high += step;
+					step <<= 1;
+				}
+				int index = Arrays.binarySearch(b, low,
+					Math.min(high + 1, b.length), value);
+				if (index >= 0) {
+					count++;
+					low = index + 1;
+				}
+				else {
+					low = -index - 1;
+				}
+				if (low == b.length)
+					break;
+			}
+			return count;
+		}
+		for (int i = 0, j = 0; (i < a.length) && (j < b.length);) {
+			if (a[i] < b[j])
+				i++;
+			else if (a[i] > b[j])
+				j++;
+			else {
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * UMass and NPMI coherence of a topic given by its top words, most
+	 * probable first
+	 *
+	 * UMass = sum over i > j of log((D(w_i, w_j) + 1) / D(w_j)); NPMI is the
+	 * mean over pairs of log(P(w_i, w_j) / (P(w_i) P(w_j))) / -log(P(w_i,
+	 * w_j)), -1 for words that never co-occur.
+	 */
+	public double[] coherence(String[] topWords)
+	{
+		int[][] topPostings = new int[topWords.length][];
+		int numKnown = 0;
+		for (String word : topWords) {
+			Integer id = word2Id.get(word);
+			if (id != null)
+				topPostings[numKnown++] = postings[id];
+		}
+
+		double umass = 0.0, npmi = 0.0;
+		int numPairs = 0;
+		for (int i = 1; i < numKnown; i++) {
+			for (int j = 0; j < i; j++) {
+				int df1 = topPostings[i].length, df2 = topPostings[j].length;
+				int coDf = intersectionSize(topPostings[i], topPostings[j]);
+				umass += Math.log((coDf + 1.0) / df2);
+				if (coDf == 0)
+					npmi += -1.0;
+				else if (coDf == numDocs)
+					npmi += 1.0;
+				else {
+					double jointPro = coDf * 1.0 / numDocs;
+					npmi += Math.log(jointPro * numDocs * numDocs
+						/ (df1 * (double) df2))
+						/ -Math.log(jointPro);
+				}
+				numPairs++;
+			}
+		}
+		return new double[] { umass, numPairs > 0 ? npmi / numPairs : 0.0 };
+	}
+
+	/**
+	 * Read the topics of a .topWords file ("TopicN: word word ..."), keeping
+	 * at most numTopWords words of each (all of them if numTopWords <= 0)
+	 */
+	public static List<String[]> readTopWords(String pathToTopWordsFile,
+		int numTopWords)
+		throws IOException
+	{
+		List<String[]> topics = new ArrayList<String[]>();
+		BufferedReader br = new BufferedReader(new FileReader(
+			pathToTopWordsFile));
+		try {
+			for (String line; (line = br.readLine()) != null;) {
+				line = line.trim();
+				int colon = line.indexOf(':');
+				if (!line.startsWith("Topic") || (colon < 0))
+					continue;
+				String words = line.substring(colon + 1).trim();
+				String[] topWords = words.length() == 0 ? new String[0] : words
+					.split("\\s+");
+				if ((numTopWords > 0) && (topWords.length > numTopWords))
+					topWords = Arrays.copyOf(topWords, numTopWords);
+				topics.add(topWords);
+			}
+		}
+		finally {
+			br.close();
+		}
+		return topics;
+	}
+
+	/**
+	 * Score every file ending with suffix (e.g. "topWords") in the folder,
+	 * writing the results to <folder>/<suffix>.Coherence
+	 */
+	public static void evaluate(String pathToReferenceCorpus,
+		String pathToFolderOfTopWordsFiles, String suffix, int numTopWords)
+		throws Exception
+	{
+		final CoherenceEval index = new CoherenceEval(pathToReferenceCorpus);
+
+		List<File> files = new ArrayList<File>();
+		for (File file : new File(pathToFolderOfTopWordsFiles).listFiles())
+			if (file.getName().endsWith(suffix))
+				files.add(file);
+		if (files.size() == 0) {
+			System.out.println("Error: There is no file ending with " + suffix);
+			throw new Exception();
+		}
+		File[] candidates = files.toArray(new File[files.size()]);
+		Arrays.sort(candidates);
+
+		// Files without topics (other outputs sharing the suffix) are skipped
+		// rather than scored 0
+		files.clear();
+		List<List<String[]>> topics = new ArrayList<List<String[]>>();
+		for (File file : candidates) {
+			List<String[]> fileTopics = readTopWords(file.getAbsolutePath(),
+				numTopWords);
+			if (fileTopics.size() == 0) {
+				System.out.println("Skipping " + file.getName()
+					+ ": no \"Topic\" lines");
+				continue;
+			}
+			files.add(file);
+			topics.add(fileTopics);
+		}
+		if (files.size() == 0) {
+			System.out.println("Error: There is no topWords file ending with "
+				+ suffix);
+			throw new Exception();
+		}
+		File[] sorted = files.toArray(new File[files.size()]);
+
+		// One task per topic of every file
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime
+			.getRuntime().availableProcessors(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable task)
+			{
+				Thread thread = new Thread(task, "CoherenceEval");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		List<List<Future<double[]>>> results = new ArrayList<List<Future<double[]>>>();
+		for (List<String[]> fileTopics : topics) {
+			List<Future<double[]>> fileResults = new ArrayList<Future<double[]>>();
+			for (final String[] topWords : fileTopics)
+				fileResults.add(pool.submit(new Callable<double[]>()
+				{
+					@Override
+					public double[] call()
+					{
+						return index.coherence(topWords);
+					}
+				}));
+			results.add(fileResults);
+		}
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(
+			pathToFolderOfTopWordsFiles + "/" + suffix + ".Coherence"));
+		writer.write("Reference corpus: " + pathToReferenceCorpus + "\n\n");
+		double[] umassValues = new double[sorted.length];
+		double[] npmiValues = new double[sorted.length];
+		try {
+			for (int i = 0; i < sorted.length; i++) {
+				System.out.println("Results for: " + sorted[i].getAbsolutePath());
+				writer.write("Results for: " + sorted[i].getAbsolutePath() + "\n");
+				double umass = 0.0, npmi = 0.0;
+				List<Future<double[]>> fileResults = results.get(i);
+				for (int tIndex = 0; tIndex < fileResults.size(); tIndex++) {
+					double[] scores;
+					try {
+						scores = fileResults.get(tIndex).get();
+					}
+					catch (ExecutionException e) {
+						throw (Exception) e.getCause();
+					}
+					writer.write("\tTopic" + tIndex + ": UMass " + scores[0]
+						+ ", NPMI " + scores[1] + "\n");
+					umass += scores[0];
+					npmi += scores[1];
+				}
+				umassValues[i] = umass / fileResults.size();
+				npmiValues[i] = npmi / fileResults.size();
+				System.out.println("\tMean UMass: " + umassValues[i]);
+				System.out.println("\tMean NPMI: " + npmiValues[i]);
+				writer.write("\tMean UMass: " + umassValues[i] + "\n");
+				writer.write("\tMean NPMI: " + npmiValues[i] + "\n");
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		writer.write("\n---\nMean UMass: " + FuncUtils.mean(umassValues)
+			+ ", standard deviation: " + FuncUtils.stddev(umassValues));
+
+		writer.write("\nMean NPMI: " + FuncUtils.mean(npmiValues)
+			+ ", standard deviation: " + FuncUtils.stddev(npmiValues));
+
+		System.out.println("---\nMean UMass: " + FuncUtils.mean(umassValues)
+			+ ", standard deviation: " + FuncUtils.stddev(umassValues));
+
+		System.out.println("Mean NPMI: " + FuncUtils.mean(npmiValues)
+			+ ", standard deviation: " + FuncUtils.stddev(npmiValues));
+
+		writer.close();
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		CoherenceEval.evaluate("test/corpus.txt", "test", "topWords", 0);
+	}
+}
@@ -0,0 +1,97 @@
+package models;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import utility.CountTable;
+import eval.ClusteringEval;
+
+/**
+ * Scores the live sample of a Gibbs sampler against golden labels every
+ * interval iterations, without writing the document-topic distributions.
+ *
+ * The cluster of a document is its most probable topic, argmax of
+ * docTopicCount + alphas, which is the topic ClusteringEval reads from the
+ * .theta file of the same sample. Each evaluation appends "iteration,
+ * seconds since inference started, purity, NMI, ARI, V-measure" to an
+ * optional CSV file.
+ */
+public class ClusteringMonitor
+{
+	private final int[] goldenLabels;
+	private final int interval;
+	private BufferedWriter writer;
+
+	private int[] outputLabels;
+
+	/**
+	 * @param pathToCSVFile
+	 *            file for the quality-vs-time curve, or null to only print the
+	 *            scores
+	 */
+	public ClusteringMonitor(String pathToGoldenLabelsFile, int inInterval,
+		String pathToCSVFile)
+		throws IOException
+	{
+		goldenLabels = ClusteringEval.readGoldenLabels(pathToGoldenLabelsFile);
+		interval = inInterval;
+		if (pathToCSVFile != null) {
+			writer = new BufferedWriter(new FileWriter(pathToCSVFile));
+			writer.write("iteration,seconds,purity,nmi,ari,vmeasure\n");
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Score the sample after iteration iter if it falls on the interval
+	 */
+	public void record(int iter, long elapsedNanos, CountTable docTopicCount,
+		int numDocuments, double[] alphas)
+		throws IOException
+	{
+		if ((interval <= 0) || (iter % interval != 0))
+			return;
+		if (numDocuments != goldenLabels.length)
+			throw new IOException("Golden labels for " + goldenLabels.length
+				+ " documents, but the corpus has " + numDocuments);
+
+		if (outputLabels == null)
+			outputLabels = new int[numDocuments];
+		int numTopics = alphas.length;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			double maxPro = docTopicCount.get(dIndex, 0) + alphas[0];
+			int index = 0;
+			for (int tIndex = 1; tIndex < numTopics; tIndex++) {
+				double pro = docTopicCount.get(dIndex, tIndex) + alphas[tIndex];
+				if (pro > maxPro) {
+					maxPro = pro;
+					index = tIndex;
+				}
+			}
+			outputLabels[dIndex] = index;
+		}
+
+		double[] scores;
+		try {
+			scores = new ClusteringEval(goldenLabels, outputLabels).scores();
+		}
+		catch (Exception e) {
+			throw new IOException(e);
+		}
+		System.out.println("\t\tPurity: " + scores[0] + ", NMI: " + scores[1]
+			+ ", ARI: " + scores[2] + ", V-measure: " + scores[3]);
+		if (writer != null) {
+			writer.write(iter + "," + (elapsedNanos / 1e9) + "," + scores[0]
+				+ "," + scores[1] + "," + scores[2] + "," + scores[3] + "\n");
+			writer.flush();
+		}
+	}
+
+	public void close()
+		throws IOException
+	{
+		if (writer != null)
+			writer.close();
+	}
+}
@@ -0,0 +1,417 @@
+package models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import utility.CmdArgs;
+import utility.CountTable;
+import utility.MTRandom;
+
+/**
+ * Worker process of distributed LDA or SWB training against a
+ * ParameterServer.
+ *
+ * Every worker holds one shard of the documents (see the shard constructors
+ * of GibbsSamplingLDA and GibbsSamplingSWB) and samples it against a local
+ * copy of the global counts. After each sweep the worker computes the sparse
+ * change of its counts since the last pull, pushes it in one batch and pulls
+ * the current rows of the words in its shard on a background thread, while
+ * the next sweep runs. The pulled rows are merged at the end of that sweep,
+ * keeping the local changes made in the meantime. A pull after sweep c waits
+ * until every worker has finished sweep c - staleness.
+ *
+ * The topic totals travel with every pull; for SWB the background word
+ * counts are synchronized as well. At the end all workers meet at a barrier
+ * and pull the full model, so every worker writes the same topic-word
+ * output; document outputs cover the worker's own shard.
+ *
+ * To train on one machine, start the server and then one JVM per shard:
+ *
+ * java models.ParameterServer 9999 2
+ *
+ * java models.DistributedWorker -model LDA -corpus corpus.txt -ntopics 20
+ * -server localhost:9999 -worker 0 -nworkers 2
+ *
+ * java models.DistributedWorker -model LDA -corpus corpus.txt -ntopics 20
+ * -server localhost:9999 -worker 1 -nworkers 2
+ *
+ * The workers take the model options of the SWB launcher (-alpha, -beta,
+ * -sbeta, -bbeta, -gamma, -niters, -twords, -name, -tables, -seed), so a
+ * distributed run is configured as a local one.
+ */
+public class DistributedWorker
+{
+	public int staleness = 1;
+
+	private final GibbsSamplingLDA lda;
+	private final GibbsSamplingSWB swb;
+	private final int workerId;
+	private final int numTopics;
+	private final int numIterations;
+	private final CountTable topicWordCount;
+	private final int[] sumTopicWordCount;
+	// Background count of every word (SWB only)
+	private final int[] backgroundCount;
+
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	// Words occurring in the shard
+	private final int[] words;
+	// Global counts of those words as of the last pull, plus the local
+	// changes pushed since then
+	private final int[][] snapshot;
+	private final int[] snapshotBackground;
+	private final int[] snapshotSums;
+
+	// Rows of the last pull, filled by the synchronization thread
+	private int[][] pulledRows;
+	private int[] pulledBackground;
+	private int[] pulledSums;
+	private Thread syncThread;
+	private Exception syncError;
+
+	public DistributedWorker(GibbsSamplingLDA inLda, String host, int port)
+		throws IOException
+	{
+		this(inLda, null, host, port);
+	}
+
+	public DistributedWorker(GibbsSamplingSWB inSwb, String host, int port)
+		throws IOException
+	{
+		this(null, inSwb, host, port);
+	}
+
+	private DistributedWorker(GibbsSamplingLDA inLda, GibbsSamplingSWB inSwb,
+		String host, int port)
+		throws IOException
+	{
+		lda = inLda;
+		swb = inSwb;
+		List<List<Integer>> corpus;
+		int vocabularySize;
+		if (lda != null) {
+			workerId = lda.shardIndex;
+			numTopics = lda.numTopics;
+			numIterations = lda.numIterations;
+			topicWordCount = lda.topicWordCount;
+			sumTopicWordCount = lda.sumTopicWordCount;
+			backgroundCount = null;
+			corpus = lda.corpus;
+			vocabularySize = lda.vocabularySize;
+		}
+		else {
+			workerId = swb.shardIndex;
+			numTopics = swb.numTopics;
+			numIterations = swb.numIterations;
+			topicWordCount = swb.topicWordCount;
+			sumTopicWordCount = swb.sumTopicWordCount;
+			backgroundCount = swb.sumWordCount;
+			corpus = swb.corpus;
+			vocabularySize = swb.vocabularySize;
+		}
+
+		boolean[] inShard = new boolean[vocabularySize];
+		int numWords = 0;
+		for (List<Integer> document : corpus)
+			for (int word : document)
+				if (!inShard[word]) {
+					inShard[word] = true;
+					numWords++;
+				}
+		words = new int[numWords];
+		for (int wIndex = 0, i = 0; wIndex < vocabularySize; wIndex++)
+			if (inShard[wIndex])
+				words[i++] = wIndex;
+		snapshot = new int[numWords][numTopics];
+		snapshotBackground = new int[numWords];
+		snapshotSums = new int[numTopics];
+
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(
+			socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(
+			socket.getOutputStream()));
+		out.writeByte(ParameterServer.REGISTER);
+		out.writeInt(workerId);
+		out.writeInt(numTopics);
+		out.writeInt(vocabularySize);
+		out.writeBoolean(backgroundCount != null);
+		out.writeInt(numWords);
+		for (int word : words)
+			out.writeInt(word);
+		out.flush();
+		in.readInt();
+	}
+
+	public void inference()
+		throws Exception
+	{
+		System.out.println("Running distributed Gibbs sampling inference, worker "
+			+ workerId);
+
+		// Start from the counts of all shards
+		pushDeltas(0);
+		pull(0, false);
+		merge();
+
+		for (int iter = 1; iter <= numIterations; iter++) {
+			if ((iter % 10) == 0)
+				System.out.println(lda != null ? lda.computePerplexity() : swb
+					.computePerplexity());
+
+			if (lda != null)
+				lda.sampleInSingleIteration();
+			else
+				swb.sampleInSingleIteration();
+
+			if (syncThread != null) {
+				syncThread.join();
+				if (syncError != null)
+					throw syncError;
+				merge();
+			}
+			pushDeltas(iter);
+			final int minClock = iter - staleness;
+			syncThread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try {
+						pull(minClock, false);
+					}
+					catch (Exception e) {
+						syncError = e;
+					}
+				}
+			});
+			syncThread.start();
+		}
+		if (syncThread != null) {
+			syncThread.join();
+			if (syncError != null)
+				throw syncError;
+			merge();
+		}
+
+		// Barrier: every worker pushes its final counts, then all pull the
+		// full model
+		int finalClock = numIterations + 1;
+		pushDeltas(finalClock);
+		pull(finalClock, true);
+		for (int wIndex = 0; wIndex < pulledRows.length; wIndex++)
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				setTopicWordCount(tIndex, wIndex, pulledRows[wIndex][tIndex]);
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			sumTopicWordCount[tIndex] = pulledSums[tIndex];
+		if (backgroundCount != null)
+			System.arraycopy(pulledBackground, 0, backgroundCount, 0,
+				backgroundCount.length);
+
+		out.writeByte(ParameterServer.DONE);
+		out.flush();
+		socket.close();
+
+		if (lda != null) {
+			lda.expName = lda.orgExpName + "-shard" + workerId;
+			lda.writeParameters();
+			lda.write();
+		}
+		else {
+			swb.expName = swb.orgExpName + "-shard" + workerId;
+			swb.writeParameters();
+			swb.write();
+		}
+		System.out.println("Sampling completed!");
+	}
+
+	/**
+	 * Push the local changes since the last pull and count them as pushed
+	 */
+	private void pushDeltas(int clock)
+		throws IOException
+	{
+		int numTopicDeltas = 0;
+		int[] topicDeltas = new int[3 * 64];
+		int numBackgroundDeltas = 0;
+		int[] backgroundDeltas = new int[2 * 64];
+		for (int i = 0; i < words.length; i++) {
+			int word = words[i];
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				int delta = topicWordCount.get(tIndex, word)
+					- snapshot[i][tIndex];
+				if (delta == 0)
+					continue;
+				if (3 * numTopicDeltas == topicDeltas.length)
+					topicDeltas = Arrays.copyOf(topicDeltas,
+						2 * topicDeltas.length);
+				topicDeltas[3 * numTopicDeltas] = tIndex;
+				topicDeltas[3 * numTopicDeltas + 1] = word;
+				topicDeltas[3 * numTopicDeltas + 2] = delta;
+				numTopicDeltas++;
+				snapshot[i][tIndex] += delta;
+			}
+			if (backgroundCount != null) {
+				int delta = backgroundCount[word] - snapshotBackground[i];
+				if (delta != 0) {
+					if (2 * numBackgroundDeltas == backgroundDeltas.length)
+						backgroundDeltas = Arrays.copyOf(
+							backgroundDeltas, 2 * backgroundDeltas.length);
+					backgroundDeltas[2 * numBackgroundDeltas] = word;
+					backgroundDeltas[2 * numBackgroundDeltas + 1] = delta;
+					numBackgroundDeltas++;
+					snapshotBackground[i] += delta;
+				}
+			}
+		}
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			snapshotSums[tIndex] = sumTopicWordCount[tIndex];
+
+		out.writeByte(ParameterServer.PUSH);
+		out.writeInt(clock);
+		out.writeInt(numTopicDeltas);
+		for (int i = 0; i < 3 * numTopicDeltas; i++)
+			out.writeInt(topicDeltas[i]);
+		out.writeInt(numBackgroundDeltas);
+		for (int i = 0; i < 2 * numBackgroundDeltas; i++)
+			out.writeInt(backgroundDeltas[i]);
+		out.flush();
+	}
+
+	/**
+	 * Pull the rows of the shard's words (or of all words) once every worker
+	 * has pushed minClock
+	 */
+	private void pull(int minClock, boolean allWords)
+		throws IOException
+	{
+		out.writeByte(ParameterServer.PULL);
+		out.writeInt(minClock);
+		out.writeBoolean(allWords);
+		out.flush();
+
+		int numWords = allWords ? topicWordCount.cols() : words.length;
+		int[][] rows = new int[numWords][numTopics];
+		int[] background = new int[backgroundCount != null ? numWords : 0];
+		for (int i = 0; i < numWords; i++) {
+			int nonZeros = in.readInt();
+			for (int j = 0; j < nonZeros; j++) {
+				int topic = in.readInt();
+				rows[i][topic] = in.readInt();
+			}
+			if (backgroundCount != null)
+				background[i] = in.readInt();
+		}
+		int[] sums = new int[numTopics];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			sums[tIndex] = in.readInt();
+		pulledRows = rows;
+		pulledBackground = background;
+		pulledSums = sums;
+	}
+
+	/**
+	 * Replace the pulled part of the local counts by the global counts,
+	 * keeping the local changes made since the last push
+	 */
+	private void merge()
+	{
+		for (int i = 0; i < words.length; i++) {
+			int word = words[i];
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				int delta = pulledRows[i][tIndex] - snapshot[i][tIndex];
+				if (delta != 0)
+					setTopicWordCount(tIndex, word,
+						topicWordCount.get(tIndex, word) + delta);
+				snapshot[i][tIndex] = pulledRows[i][tIndex];
+			}
+			if (backgroundCount != null) {
+				backgroundCount[word] += pulledBackground[i]
+					- snapshotBackground[i];
+				snapshotBackground[i] = pulledBackground[i];
+			}
+		}
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			sumTopicWordCount[tIndex] += pulledSums[tIndex]
+				- snapshotSums[tIndex];
+			snapshotSums[tIndex] = pulledSums[tIndex];
+		}
+	}
+
+	private void setTopicWordCount(int topic, int word, int count)
+	{
+		topicWordCount.set(topic, word, count);
+		// Word-major mirror kept by the topic kernels
+		int[][] wordTopicCount = lda != null ? lda.wordTopicCount
+			: swb.wordTopicCount;
+		if (wordTopicCount != null)
+			wordTopicCount[word][topic] = count;
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		CmdArgs cmdArgs = new CmdArgs();
+		CmdLineParser parser = new CmdLineParser(cmdArgs);
+		try {
+			parser.parseArgument(args);
+			if ((cmdArgs.nworkers < 1) || (cmdArgs.worker < 0)
+				|| (cmdArgs.worker >= cmdArgs.nworkers))
+				throw new CmdLineException(
+					"Option \"-worker\" must be between 0 and \"-nworkers\" - 1");
+			if (cmdArgs.server.lastIndexOf(':') < 0)
+				throw new CmdLineException(
+					"Option \"-server\" must get host:port");
+		}
+		catch (CmdLineException e) {
+			System.out.println("Error: " + e.getMessage());
+			System.out.println("java -cp \"bin:lib/*\" models.DistributedWorker [options ...]");
+			parser.printUsage(System.out);
+			System.exit(1);
+		}
+		String host = cmdArgs.server.substring(0,
+			cmdArgs.server.lastIndexOf(':'));
+		int port = Integer.parseInt(cmdArgs.server.substring(cmdArgs.server
+			.lastIndexOf(':') + 1));
+		if (cmdArgs.seed != 0)
+			MTRandom.setSeed(cmdArgs.seed);
+
+		DistributedWorker worker;
+		if (cmdArgs.model.equalsIgnoreCase("SWB")) {
+			double[] betas = { cmdArgs.beta, cmdArgs.specialBeta,
+				cmdArgs.backgroundBeta };
+			worker = new DistributedWorker(new GibbsSamplingSWB(cmdArgs.corpus,
+				cmdArgs.ntopics, cmdArgs.alpha, betas, cmdArgs.gamma,
+				cmdArgs.niters, cmdArgs.twords, cmdArgs.expModelName, "",
+				cmdArgs.countTableType, cmdArgs.worker, cmdArgs.nworkers),
+				host, port);
+		}
+		else if (cmdArgs.model.equalsIgnoreCase("LDA")) {
+			worker = new DistributedWorker(new GibbsSamplingLDA(cmdArgs.corpus,
+				cmdArgs.ntopics, cmdArgs.alpha, cmdArgs.beta, cmdArgs.niters,
+				cmdArgs.twords, cmdArgs.expModelName, "", 0,
+				cmdArgs.countTableType, cmdArgs.worker, cmdArgs.nworkers),
+				host, port);
+		}
+		else {
+			System.out.println("Error: Option \"-model\" must get \"LDA\" or \"SWB\"");
+			System.exit(1);
+			return;
+		}
+		worker.staleness = cmdArgs.staleness;
+		worker.inference();
+	}
+}
@@ -0,0 +1,219 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Schedules the documents of a parallel Gibbs sweep on a work-stealing
+ * ForkJoinPool.
+ *
+ * Documents are cut into token ranges: a document longer than maxRangeLength
+ * tokens is split into several ranges, which the samplers process against a
+ * private copy of the document's counts. Consecutive ranges are then grouped
+ * into chunks of roughly equal token counts, about chunksPerThread chunks per
+ * thread, so that idle threads can steal the remaining chunks of busy ones.
+ *
+ * After each run the scheduler exposes the balance of the sweep: the ratio
+ * of the largest to the mean number of tokens and busy time per thread, and
+ * the number of tasks stolen.
+ */
+public class DocumentScheduler
+{
+	/**
+	 * Processes tokens [start, end) of document doc. split is true when the
+	 * document is shared with other ranges of the same sweep.
+	 */
+	public interface RangeProcessor
+	{
+		public void process(int doc, int start, int end, boolean split);
+	}
+
+	private final ForkJoinPool pool;
+	private final int numThreads;
+
+	// Ranges: document, first token and end token
+	private final int[] rangeDoc;
+	private final int[] rangeStart;
+	private final int[] rangeEnd;
+	private final boolean[] splitDoc;
+	// Chunk c covers ranges [chunkStart[c], chunkStart[c + 1])
+	private final int[] chunkStart;
+	private final int numChunks;
+
+	// Per-thread load of the current run: {tokens, busy nanos}
+	private final List<long[]> threadLoads = new ArrayList<long[]>();
+	private ThreadLocal<long[]> threadLoad;
+
+	public double lastTokenSkew; // max / mean tokens per thread
+	public double lastTimeSkew; // max / mean busy time per thread
+	public long lastStealCount; // tasks stolen during the last run
+	public int lastNumActiveThreads; // threads that processed any chunk
+	public long lastRunNanos;
+
+	public DocumentScheduler(int[] docLengths, int inNumThreads,
+		int chunksPerThread, int maxRangeLength)
+	{
+		numThreads = inNumThreads;
+		pool = new ForkJoinPool(numThreads);
+
+		long numTokens = 0;
+		int numRanges = 0;
+		splitDoc = new boolean[docLengths.length];
+		for (int dIndex = 0; dIndex < docLengths.length; dIndex++) {
+			numTokens += docLengths[dIndex];
+			int docRanges = maxRangeLength > 0 ? (docLengths[dIndex]
+				+ maxRangeLength - 1) / maxRangeLength : 1;
+			numRanges += Math.max(1, docRanges);
+			splitDoc[dIndex] = docRanges > 1;
+		}
+
+		rangeDoc = new int[numRanges];
+		rangeStart = new int[numRanges];
+		rangeEnd = new int[numRanges];
+		int r = 0;
+		for (int dIndex = 0; dIndex < docLengths.length; dIndex++) {
+			int start = 0;
+			do {
+				int end = docLengths[dIndex];
+				if (maxRangeLength > 0)
+					end = Math.min(end, start + maxRangeLength);
+				rangeDoc[r] = dIndex;
+				rangeStart[r] = start;
+				rangeEnd[r] = end;
+				r++;
+				start = end;
+			}
+			while (start < docLengths[dIndex]);
+		}
+
+		long targetTokens = Math.max(1,
+			numTokens / ((long) numThreads * Math.max(1, chunksPerThread)));
+		int[] starts = new int[numRanges + 1];
+		int chunks = 0;
+		long chunkTokens = 0;
+		for (r = 0; r < numRanges; r++) {
+			if (chunkTokens == 0)
+				starts[chunks++] = r;
+			chunkTokens += rangeEnd[r] - rangeStart[r];
+			if (chunkTokens >= targetTokens)
+				chunkTokens = 0;
+		}
+		starts[chunks] = numRanges;
+		numChunks = chunks;
+		chunkStart = new int[chunks + 1];
+		System.arraycopy(starts, 0, chunkStart, 0, chunks + 1);
+	}
+
+	public int numThreads()
+	{
+		return numThreads;
+	}
+
+	public int numChunks()
+	{
+		return numChunks;
+	}
+
+	public boolean isSplit(int doc)
+	{
+		return splitDoc[doc];
+	}
+
+	/**
+	 * Process every range once and wait for completion
+	 */
+	public void run(final RangeProcessor processor)
+	{
+		synchronized (threadLoads) {
+			threadLoads.clear();
+		}
+		threadLoad = new ThreadLocal<long[]>()
+		{
+			@Override
+			protected long[] initialValue()
+			{
+				long[] load = new long[2];
+				synchronized (threadLoads) {
+					threadLoads.add(load);
+				}
+				return load;
+			}
+		};
+
+		long steals = pool.getStealCount();
+		long startTime = System.nanoTime();
+		pool.invoke(new ChunkTask(processor, 0, numChunks));
+		lastRunNanos = System.nanoTime() - startTime;
+		lastStealCount = pool.getStealCount() - steals;
+
+		long maxTokens = 0, sumTokens = 0, maxNanos = 0, sumNanos = 0;
+		synchronized (threadLoads) {
+			for (long[] load : threadLoads) {
+				maxTokens = Math.max(maxTokens, load[0]);
+				sumTokens += load[0];
+				maxNanos = Math.max(maxNanos, load[1]);
+				sumNanos += load[1];
+			}
+			lastNumActiveThreads = threadLoads.size();
+		}
+		// Idle threads count towards the mean
+		lastTokenSkew = sumTokens > 0 ? maxTokens * (double) numThreads
+			/ sumTokens : 1.0;
+		lastTimeSkew = sumNanos > 0 ? maxNanos * (double) numThreads
+			/ sumNanos : 1.0;
+	}
+
+	public String lastRunSummary()
+	{
+		return "token skew " + lastTokenSkew + ", time skew " + lastTimeSkew
+			+ ", " + lastNumActiveThreads + "/" + numThreads
+			+ " threads active, " + lastStealCount + " steals";
+	}
+
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	private class ChunkTask
+		extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final RangeProcessor processor;
+		private final int from;
+		private final int to;
+
+		ChunkTask(RangeProcessor inProcessor, int inFrom, int inTo)
+		{
+			processor = inProcessor;
+			from = inFrom;
+			to = inTo;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ChunkTask(processor, from, mid), new ChunkTask(
+					processor, mid, to));
+				return;
+			}
+			if (from >= to)
+				return;
+			long startTime = System.nanoTime();
+			long tokens = 0;
+			for (int r = chunkStart[from]; r < chunkStart[from + 1]; r++) {
+				processor.process(rangeDoc[r], rangeStart[r], rangeEnd[r],
+					splitDoc[rangeDoc[r]]);
+				tokens += rangeEnd[r] - rangeStart[r];
+			}
+			long[] load = threadLoad.get();
+			load[0] += tokens;
+			load[1] += System.nanoTime() - startTime;
+		}
+	}
+}
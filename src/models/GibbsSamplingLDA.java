@@ -6,13 +6,26 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import utility.AssignmentTable;
+import utility.BinaryTheta;
+import utility.CountTable;
+import utility.Dirichlet;
 import utility.FuncUtils;
+import utility.MTRandom;
+import utility.MersenneTwister;
+import utility.TermIndex;
 
 /**
  * jLDADMM: A Java package for the LDA and DMM topic models
@@ -35,12 +48,13 @@ public class GibbsSamplingLDA
 	public int numIterations; // Number of Gibbs sampling iterations
 	public int topWords; // Number of most probable words for each topic
 
-	public double alphaSum; // alpha * numTopics
+	public double[] alphas; // Asymmetric alpha, one value per topic
+	public double alphaSum; // Sum of alphas
 	public double betaSum; // beta * vocabularySize
 
 	public List<List<Integer>> corpus; // Word ID-based corpus
-	public List<List<Integer>> topicAssignments; // Topics assignments for words
-													// in the corpus
+	public AssignmentTable topicAssignments; // Topics assignments for words
+												// in the corpus
 	public int numDocuments; // Number of documents in the corpus
 	public int numWordsInCorpus; // Number of words in the corpus
 
@@ -52,18 +66,51 @@ public class GibbsSamplingLDA
 
 	// numDocuments * numTopics matrix
 	// Given a document: number of its words assigned to each topic
-	public int[][] docTopicCount;
+	public CountTable docTopicCount;
 	// Number of words in every document
 	public int[] sumDocTopicCount;
 	// numTopics * vocabularySize matrix
 	// Given a topic: number of times a word type assigned to the topic
-	public int[][] topicWordCount;
+	public CountTable topicWordCount;
 	// Total number of words assigned to a topic
 	public int[] sumTopicWordCount;
 
 	// Double array used to sample a topic
 	public double[] multiPros;
 
+	// Optional kernel computing the topic weights (see TopicKernel); when
+	// set, word-major counts and reciprocal topic denominators are kept
+	public TopicKernel kernel = null;
+	// vocabularySize * numTopics mirror of topicWordCount
+	public int[][] wordTopicCount;
+	// 1 / (sumTopicWordCount[t] + betaSum)
+	public double[] invTopicDenominators;
+	private double[] blockSums;
+
+	// Number of sampling threads. With more than one, each sweep runs the
+	// approximate distributed (AD-LDA) sampler: documents are scheduled on a
+	// DocumentScheduler and every thread samples against its own copy of the
+	// topic-word counts, which are merged at the end of the sweep.
+	public int numThreads = 1;
+	// Documents longer than this are split across threads (0 = never split)
+	public int maxRangeLength = 0;
+	// Make the parallel sweep independent of thread scheduling: every range
+	// draws from its own random stream (see MTRandom.streamSeed) and samples
+	// against the counts of the start of the sweep plus its own changes only
+	public boolean deterministic = false;
+	public DocumentScheduler scheduler;
+	private ThreadLocal<ParallelWorker> parallelWorker;
+	private List<ParallelWorker> parallelWorkers;
+	private int sweep = 0;
+	// With numThreads > 1, run model-parallel sweeps instead: the vocabulary
+	// is split into numThreads blocks that rotate across the threads (see
+	// WordPartition), so a single copy of topicWordCount is shared without
+	// conflicting writes
+	public boolean wordPartitioned = false;
+	public WordPartition wordPartition;
+	private ExecutorService partitionPool;
+	private PartitionWorker[] partitionWorkers;
+
 	// Path to the directory containing the corpus
 	public String folderPath;
 	// Path to the topic modeling corpus
@@ -73,6 +120,27 @@ public class GibbsSamplingLDA
 	public String orgExpName = "LDAmodel";
 	public String tAssignsFilePath = "";
 	public int savestep = 0;
+	// Write .theta.bin (see utility.BinaryTheta) instead of .theta
+	public boolean binaryTheta = false;
+	// Cell type of the count tables: "int", "short" or "byte" (see CountTable)
+	public String countTableType = CountTable.INT;
+	// Shard of the corpus held by this sampler (see DistributedWorker)
+	public int shardIndex = 0;
+	public int numShards = 1;
+
+	// Optional per-iteration instrumentation, see SamplerMetrics
+	public SamplerMetrics metrics = null;
+
+	// Optional in-process clustering evaluation, see ClusteringMonitor
+	public ClusteringMonitor clusteringMonitor = null;
+	// Number of tokens whose assignment changed in the last iteration
+	public int numChangedAssignments;
+	// Optional early stopping, see StoppingPolicy
+	public StoppingPolicy stoppingPolicy = null;
+	// Re-estimate hyper-parameters every optimizeInterval iterations (0 = never)
+	// once optimizeBurnIn iterations have passed
+	public int optimizeInterval = 0;
+	public int optimizeBurnIn = 200;
 
 	public GibbsSamplingLDA(String pathToCorpus, int inNumTopics,
 		double inAlpha, double inBeta, int inNumIterations, int inTopWords)
@@ -114,6 +182,32 @@ public class GibbsSamplingLDA
 		String inExpName, String pathToTAfile, int inSaveStep)
 		throws Exception
 	{
+		this(pathToCorpus, inNumTopics, inAlpha, inBeta, inNumIterations,
+			inTopWords, inExpName, pathToTAfile, inSaveStep, CountTable.INT);
+	}
+
+	public GibbsSamplingLDA(String pathToCorpus, int inNumTopics,
+		double inAlpha, double inBeta, int inNumIterations, int inTopWords,
+		String inExpName, String pathToTAfile, int inSaveStep,
+		String inCountTableType)
+		throws Exception
+	{
+		this(pathToCorpus, inNumTopics, inAlpha, inBeta, inNumIterations,
+			inTopWords, inExpName, pathToTAfile, inSaveStep, inCountTableType,
+			0, 1);
+	}
+
+	/**
+	 * Keep only shard inShardIndex of inNumShards of the corpus: document i
+	 * belongs to shard i % inNumShards. The vocabulary is still built from
+	 * the whole corpus, so word IDs agree across shards.
+	 */
+	public GibbsSamplingLDA(String pathToCorpus, int inNumTopics,
+		double inAlpha, double inBeta, int inNumIterations, int inTopWords,
+		String inExpName, String pathToTAfile, int inSaveStep,
+		String inCountTableType, int inShardIndex, int inNumShards)
+		throws Exception
+	{
 
 		alpha = inAlpha;
 		beta = inBeta;
@@ -121,6 +215,9 @@ public class GibbsSamplingLDA
 		numIterations = inNumIterations;
 		topWords = inTopWords;
 		savestep = inSaveStep;
+		countTableType = inCountTableType;
+		shardIndex = inShardIndex;
+		numShards = inNumShards;
 		expName = inExpName;
 		orgExpName = expName;
 		corpusPath = pathToCorpus;
@@ -137,33 +234,31 @@ public class GibbsSamplingLDA
 		numDocuments = 0;
 		numWordsInCorpus = 0;
 
-		BufferedReader br = null;
 		try {
-			int indexWord = -1;
-			br = new BufferedReader(new FileReader(pathToCorpus));
-			for (String doc; (doc = br.readLine()) != null;) {
-
-				if (doc.trim().length() == 0)
-					continue;
-
-				String[] words = doc.trim().split("\\s+");
-				List<Integer> document = new ArrayList<Integer>();
-
-				for (String word : words) {
-					if (word2IdVocabulary.containsKey(word)) {
-						document.add(word2IdVocabulary.get(word));
-					}
-					else {
-						indexWord += 1;
-						word2IdVocabulary.put(word, indexWord);
-						id2WordVocabulary.put(indexWord, word);
-						document.add(indexWord);
-					}
+			TermIndex vocabulary = new TermIndex(false);
+			vocabulary.readCorpus(pathToCorpus, new TermIndex.DocumentHandler()
+			{
+				int docIndex = -1;
+
+				@Override
+				public void document(int[] words, int length)
+				{
+					docIndex++;
+					if ((numShards > 1) && (docIndex % numShards != shardIndex))
+						return;
+
+					List<Integer> document = new ArrayList<Integer>(length);
+					for (int i = 0; i < length; i++)
+						document.add(words[i]);
+					numDocuments++;
+					numWordsInCorpus += length;
+					corpus.add(document);
 				}
-
-				numDocuments++;
-				numWordsInCorpus += document.size();
-				corpus.add(document);
+			});
+			for (int id = 0; id < vocabulary.size(); id++) {
+				String word = vocabulary.term(id);
+				word2IdVocabulary.put(word, id);
+				id2WordVocabulary.put(id, word);
 			}
 		}
 		catch (Exception e) {
@@ -171,8 +266,10 @@ public class GibbsSamplingLDA
 		}
 
 		vocabularySize = word2IdVocabulary.size(); // vocabularySize = indexWord
-		docTopicCount = new int[numDocuments][numTopics];
-		topicWordCount = new int[numTopics][vocabularySize];
+		docTopicCount = CountTable.create(countTableType, numDocuments,
+			numTopics);
+		topicWordCount = CountTable.create(countTableType, numTopics,
+			vocabularySize);
 		sumDocTopicCount = new int[numDocuments];
 		sumTopicWordCount = new int[numTopics];
 
@@ -181,9 +278,13 @@ public class GibbsSamplingLDA
 			multiPros[i] = 1.0 / numTopics;
 		}
 
+		alphas = new double[numTopics];
+		Arrays.fill(alphas, alpha);
 		alphaSum = numTopics * alpha;
 		betaSum = vocabularySize * beta;
 
+		if (numShards > 1)
+			System.out.println("Shard " + shardIndex + " of " + numShards);
 		System.out.println("Corpus size: " + numDocuments + " docs, "
 			+ numWordsInCorpus + " words");
 		System.out.println("Vocabuary size: " + vocabularySize);
@@ -208,25 +309,31 @@ public class GibbsSamplingLDA
 	{
 		System.out.println("Randomly initializing topic assignments ...");
 
-		topicAssignments = new ArrayList<List<Integer>>();
+		topicAssignments = AssignmentTable.create(docLengths(), numTopics);
 
 		for (int i = 0; i < numDocuments; i++) {
-			List<Integer> topics = new ArrayList<Integer>();
 			int docSize = corpus.get(i).size();
 			for (int j = 0; j < docSize; j++) {
 				int topic = FuncUtils.nextDiscrete(multiPros); // Sample a topic
 				// Increase counts
-				docTopicCount[i][topic] += 1;
-				topicWordCount[topic][corpus.get(i).get(j)] += 1;
+				docTopicCount.increment(i, topic);
+				topicWordCount.increment(topic, corpus.get(i).get(j));
 				sumDocTopicCount[i] += 1;
 				sumTopicWordCount[topic] += 1;
 
-				topics.add(topic);
+				topicAssignments.set(i, j, topic);
 			}
-			topicAssignments.add(topics);
 		}
 	}
 
+	public int[] docLengths()
+	{
+		int[] docLengths = new int[numDocuments];
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++)
+			docLengths[dIndex] = corpus.get(dIndex).size();
+		return docLengths;
+	}
+
 	/**
 	 * Initialize topic assignments from a given file
 	 */
@@ -235,7 +342,7 @@ public class GibbsSamplingLDA
 		System.out.println("Reading topic-assignment file: "
 			+ pathToTopicAssignmentFile);
 
-		topicAssignments = new ArrayList<List<Integer>>();
+		topicAssignments = AssignmentTable.create(docLengths(), numTopics);
 
 		BufferedReader br = null;
 		try {
@@ -244,19 +351,17 @@ public class GibbsSamplingLDA
 			int numWords = 0;
 			for (String line; (line = br.readLine()) != null;) {
 				String[] strTopics = line.trim().split("\\s+");
-				List<Integer> topics = new ArrayList<Integer>();
 				for (int j = 0; j < strTopics.length; j++) {
 					int topic = new Integer(strTopics[j]);
 					// Increase counts
-					docTopicCount[docID][topic] += 1;
-					topicWordCount[topic][corpus.get(docID).get(j)] += 1;
+					docTopicCount.increment(docID, topic);
+					topicWordCount.increment(topic, corpus.get(docID).get(j));
 					sumDocTopicCount[docID] += 1;
 					sumTopicWordCount[topic] += 1;
 
-					topics.add(topic);
+					topicAssignments.set(docID, j, topic);
 					numWords++;
 				}
-				topicAssignments.add(topics);
 				docID++;
 			}
 
@@ -276,12 +381,20 @@ public class GibbsSamplingLDA
 	{
 		System.out.println("Running Gibbs sampling inference: ");
 
+		long inferenceStartTime = System.nanoTime();
 		for (int iter = 1; iter <= numIterations; iter++) {
 
 			System.out.println("\tSampling iteration: " + (iter));
 			// System.out.println("\t\tPerplexity: " + computePerplexity());
 
+			long startTime = System.nanoTime();
 			sampleInSingleIteration();
+			if (scheduler != null)
+				System.out.println("\t\tScheduler: " + scheduler.lastRunSummary());
+			if ((optimizeInterval > 0) && (iter > optimizeBurnIn)
+				&& (iter % optimizeInterval == 0))
+				optimizeHyperparameters();
+			long samplingTime = System.nanoTime();
 
 			if ((savestep > 0) && (iter % savestep == 0)
 				&& (iter < numIterations)) {
@@ -290,6 +403,22 @@ public class GibbsSamplingLDA
 				expName = orgExpName + "-" + iter;
 				write();
 			}
+
+			if (metrics != null)
+				metrics.record(iter, numWordsInCorpus, samplingTime - startTime,
+					0, System.nanoTime() - samplingTime, numChangedAssignments,
+					numWordsInCorpus, 0, 0);
+
+			if (clusteringMonitor != null)
+				clusteringMonitor.record(iter, System.nanoTime()
+					- inferenceStartTime, docTopicCount, numDocuments, alphas);
+
+			if ((stoppingPolicy != null)
+				&& stoppingPolicy.shouldStop(iter, numChangedAssignments,
+					numWordsInCorpus, this::computeLogLikelihood)) {
+				System.out.println("\tStopping after " + iter + " iterations");
+				break;
+			}
 		}
 		expName = orgExpName;
 
@@ -297,73 +426,482 @@ public class GibbsSamplingLDA
 		System.out.println("Writing output from the last sample ...");
 		write();
 
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+		if (partitionPool != null) {
+			partitionPool.shutdown();
+			partitionPool = null;
+			wordPartition = null;
+		}
 		System.out.println("Sampling completed!");
 
 	}
 
+	/**
+	 * Build the word-major counts and the cached denominators used by the
+	 * kernel
+	 */
+	public void prepareKernel()
+	{
+		if (!(docTopicCount instanceof CountTable.IntCountTable))
+			throw new IllegalStateException(
+				"The topic kernel requires int count tables");
+		if (wordTopicCount == null) {
+			wordTopicCount = new int[vocabularySize][numTopics];
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				for (int wIndex = 0; wIndex < vocabularySize; wIndex++)
+					wordTopicCount[wIndex][tIndex] = topicWordCount.get(tIndex, wIndex);
+		}
+		invTopicDenominators = new double[numTopics];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			invTopicDenominators[tIndex] = 1.0 / (sumTopicWordCount[tIndex] + betaSum);
+		blockSums = new double[kernel.numBlocks(numTopics)];
+	}
+
 	public void sampleInSingleIteration()
 	{
+		numChangedAssignments = 0;
+		if ((numThreads > 1) && wordPartitioned) {
+			sampleWordPartitioned();
+			return;
+		}
+		if (numThreads > 1) {
+			sampleInParallel();
+			return;
+		}
+		if (kernel != null)
+			prepareKernel();
 		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
 			int docSize = corpus.get(dIndex).size();
 			for (int wIndex = 0; wIndex < docSize; wIndex++) {
 				// Get current word and its topic
-				int topic = topicAssignments.get(dIndex).get(wIndex);
+				int topic = topicAssignments.get(dIndex, wIndex);
 				int word = corpus.get(dIndex).get(wIndex);
 
 				// Decrease counts
-				docTopicCount[dIndex][topic] -= 1;
+				docTopicCount.decrement(dIndex, topic);
 				// docTopicSum[dIndex] -= 1;
-				topicWordCount[topic][word] -= 1;
+				topicWordCount.decrement(topic, word);
 				sumTopicWordCount[topic] -= 1;
 
+				if (kernel != null) {
+					wordTopicCount[word][topic] -= 1;
+					invTopicDenominators[topic] = 1.0 / (sumTopicWordCount[topic] + betaSum);
+
+					double sum = kernel.fill(numTopics,
+						((CountTable.IntCountTable) docTopicCount).row(dIndex),
+						alphas, wordTopicCount[word], beta, invTopicDenominators,
+						1.0, multiPros, blockSums);
+					int oldTopic = topic;
+					topic = FuncUtils.findInBlocks(multiPros, blockSums,
+						kernel.blockSize(), numTopics, MTRandom.nextDouble() * sum);
+					if (topic != oldTopic)
+						numChangedAssignments++;
+
+					docTopicCount.increment(dIndex, topic);
+					topicWordCount.increment(topic, word);
+					sumTopicWordCount[topic] += 1;
+					wordTopicCount[word][topic] += 1;
+					invTopicDenominators[topic] = 1.0 / (sumTopicWordCount[topic] + betaSum);
+					topicAssignments.set(dIndex, wIndex, topic);
+					continue;
+				}
+
 				// Sample a topic
 				for (int tIndex = 0; tIndex < numTopics; tIndex++) {
-					multiPros[tIndex] = (docTopicCount[dIndex][tIndex] + alpha)
-						* ((topicWordCount[tIndex][word] + beta) / (sumTopicWordCount[tIndex] + betaSum));
-					// multiPros[tIndex] = ((docTopicCount[dIndex][tIndex] +
+					multiPros[tIndex] = (docTopicCount.get(dIndex, tIndex) + alphas[tIndex])
+						* ((topicWordCount.get(tIndex, word) + beta) / (sumTopicWordCount[tIndex] + betaSum));
+					// multiPros[tIndex] = ((docTopicCount.get(dIndex, tIndex) +
 					// alpha) /
 					// (docTopicSum[dIndex] + alphaSum))
-					// * ((topicWordCount[tIndex][word] + beta) /
+					// * ((topicWordCount.get(tIndex, word) + beta) /
 					// (topicWordSum[tIndex] + betaSum));
 				}
+				int oldTopic = topic;
 				topic = FuncUtils.nextDiscrete(multiPros);
+				if (topic != oldTopic)
+					numChangedAssignments++;
 
 				// Increase counts
-				docTopicCount[dIndex][topic] += 1;
+				docTopicCount.increment(dIndex, topic);
 				// docTopicSum[dIndex] += 1;
-				topicWordCount[topic][word] += 1;
+				topicWordCount.increment(topic, word);
 				sumTopicWordCount[topic] += 1;
 
 				// Update topic assignments
-				topicAssignments.get(dIndex).set(wIndex, topic);
+				topicAssignments.set(dIndex, wIndex, topic);
+			}
+		}
+	}
+
+	/**
+	 * One AD-LDA sweep: every thread samples its share of the documents
+	 * against a private copy of the topic-word counts and buffers its
+	 * document-topic changes; both are merged into the shared counts once all
+	 * threads are done, so the shared tables are read-only during the sweep
+	 */
+	public void sampleInParallel()
+	{
+		if (scheduler == null) {
+			scheduler = new DocumentScheduler(docLengths(), numThreads, 4,
+				maxRangeLength);
+			parallelWorkers = new ArrayList<ParallelWorker>();
+			parallelWorker = new ThreadLocal<ParallelWorker>()
+			{
+				@Override
+				protected ParallelWorker initialValue()
+				{
+					synchronized (parallelWorkers) {
+						ParallelWorker worker = new ParallelWorker(
+							MTRandom.nextInt(Integer.MAX_VALUE));
+						parallelWorkers.add(worker);
+						return worker;
+					}
+				}
+			};
+		}
+		sweep++;
+		scheduler.run(new DocumentScheduler.RangeProcessor()
+		{
+			@Override
+			public void process(int doc, int start, int end, boolean split)
+			{
+				parallelWorker.get().sample(doc, start, end);
+			}
+		});
+
+		List<ParallelWorker> active = new ArrayList<ParallelWorker>();
+		for (ParallelWorker worker : parallelWorkers)
+			if (worker.sweep == sweep)
+				active.add(worker);
+
+		for (ParallelWorker worker : active) {
+			numChangedAssignments += worker.numChanged;
+			for (int i = 0; i < worker.numDocDeltas; i += 3)
+				docTopicCount.add(worker.docDeltas[i], worker.docDeltas[i + 1],
+					worker.docDeltas[i + 2]);
+		}
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			int sumDelta = 0;
+			for (ParallelWorker worker : active)
+				sumDelta += worker.topicSum[tIndex] - sumTopicWordCount[tIndex];
+			sumTopicWordCount[tIndex] += sumDelta;
+			for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
+				int count = topicWordCount.get(tIndex, wIndex);
+				int delta = 0;
+				for (ParallelWorker worker : active)
+					delta += worker.topicWord[tIndex][wIndex] - count;
+				if (delta != 0)
+					topicWordCount.add(tIndex, wIndex, delta);
 			}
 		}
+		// In deterministic mode the private copies are back at the start of
+		// the sweep and the changes are in the word deltas. Integer sums, so
+		// the order of the workers does not matter.
+		for (ParallelWorker worker : active)
+			for (int i = 0; i < worker.numWordDeltas; i += 3) {
+				topicWordCount.add(worker.wordDeltas[i], worker.wordDeltas[i + 1],
+					worker.wordDeltas[i + 2]);
+				sumTopicWordCount[worker.wordDeltas[i]] += worker.wordDeltas[i + 2];
+			}
 	}
 
-	// public double computePerplexity()
-	// {
-	// double logliCorpus = 0.0;
-	// for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
-	// int docSize = corpus.get(dIndex).size();
-	// double logliDoc = 0.0;
-	// for (int wIndex = 0; wIndex < docSize; wIndex++) {
-	// int word = corpus.get(dIndex).get(wIndex);
-	// double likeWord = 0.0;
-	// for (int tIndex = 0; tIndex < numTopics; tIndex++) {
-	// likeWord += ((docTopicCount[dIndex][tIndex] + alpha) /
-	// (sumDocTopicCount[dIndex] + alphaSum))
-	// * ((topicWordCount[tIndex][word] + beta) / (sumTopicWordCount[tIndex] +
-	// betaSum));
-	// }
-	// logliDoc += Math.log(likeWord);
-	// }
-	// logliCorpus += logliDoc;
-	// }
-	// double perplexity = Math.exp(-1.0 * logliCorpus / numWordsInCorpus);
-	// if (perplexity < 0)
-	// throw new RuntimeException("Illegal perplexity value: " + perplexity);
-	// return perplexity;
-	// }
+	/**
+	 * Per-thread state of the parallel sweep
+	 */
+	private class ParallelWorker
+	{
+		int sweep = -1;
+		final MersenneTwister random;
+		final int[][] topicWord = new int[numTopics][vocabularySize];
+		final int[] topicSum = new int[numTopics];
+		final int[] docRow = new int[numTopics];
+		final double[] pros = new double[numTopics];
+		int numChanged;
+		// (document, topic, delta) triples
+		int[] docDeltas = new int[3 * 64];
+		int numDocDeltas;
+		// Deterministic mode: (topic, word, delta) triples of the sweep, which
+		// are undone in topicWord after every range
+		int[] wordDeltas = new int[3 * 64];
+		int numWordDeltas;
+
+		ParallelWorker(int seed)
+		{
+			random = new MersenneTwister(seed);
+		}
+
+		void begin()
+		{
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				for (int wIndex = 0; wIndex < vocabularySize; wIndex++)
+					topicWord[tIndex][wIndex] = topicWordCount.get(tIndex, wIndex);
+				topicSum[tIndex] = sumTopicWordCount[tIndex];
+			}
+			numChanged = 0;
+			numDocDeltas = 0;
+			numWordDeltas = 0;
+		}
+
+		void addWordDelta(int topic, int word, int delta)
+		{
+			if (numWordDeltas + 3 > wordDeltas.length)
+				wordDeltas = Arrays.copyOf(wordDeltas, wordDeltas.length * 2);
+			wordDeltas[numWordDeltas++] = topic;
+			wordDeltas[numWordDeltas++] = word;
+			wordDeltas[numWordDeltas++] = delta;
+		}
+
+		void sample(int dIndex, int start, int end)
+		{
+			if (sweep != GibbsSamplingLDA.this.sweep) {
+				begin();
+				sweep = GibbsSamplingLDA.this.sweep;
+			}
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				docRow[tIndex] = docTopicCount.get(dIndex, tIndex);
+			List<Integer> document = corpus.get(dIndex);
+			int firstWordDelta = numWordDeltas;
+			if (deterministic)
+				random.setSeed(MTRandom.streamSeed(GibbsSamplingLDA.this.sweep,
+					dIndex, start));
+
+			for (int wIndex = start; wIndex < end; wIndex++) {
+				int topic = topicAssignments.get(dIndex, wIndex);
+				int word = document.get(wIndex);
+
+				docRow[topic] -= 1;
+				topicWord[topic][word] -= 1;
+				topicSum[topic] -= 1;
+
+				double sum = 0.0;
+				for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+					double pro = (docRow[tIndex] + alphas[tIndex])
+						* ((topicWord[tIndex][word] + beta) / (topicSum[tIndex] + betaSum));
+					pros[tIndex] = pro;
+					sum += pro;
+				}
+				int oldTopic = topic;
+				topic = FuncUtils.nextDiscrete(pros, sum, random);
+				if (topic != oldTopic) {
+					numChanged++;
+					if (deterministic) {
+						addWordDelta(oldTopic, word, -1);
+						addWordDelta(topic, word, 1);
+					}
+				}
+
+				docRow[topic] += 1;
+				topicWord[topic][word] += 1;
+				topicSum[topic] += 1;
+				topicAssignments.set(dIndex, wIndex, topic);
+			}
+			for (int i = firstWordDelta; i < numWordDeltas; i += 3) {
+				topicWord[wordDeltas[i]][wordDeltas[i + 1]] -= wordDeltas[i + 2];
+				topicSum[wordDeltas[i]] -= wordDeltas[i + 2];
+			}
+
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				int delta = docRow[tIndex] - docTopicCount.get(dIndex, tIndex);
+				if (delta == 0)
+					continue;
+				if (numDocDeltas + 3 > docDeltas.length)
+					docDeltas = Arrays.copyOf(docDeltas, docDeltas.length * 2);
+				docDeltas[numDocDeltas++] = dIndex;
+				docDeltas[numDocDeltas++] = tIndex;
+				docDeltas[numDocDeltas++] = delta;
+			}
+		}
+	}
+
+	/**
+	 * One model-parallel sweep of numThreads rounds. In every round each
+	 * worker samples its document shard restricted to one word block, so
+	 * workers write disjoint rows of docTopicCount and disjoint columns of
+	 * topicWordCount. Only the topic totals are shared: each worker updates a
+	 * private copy during the round and the changes are merged between
+	 * rounds.
+	 */
+	public void sampleWordPartitioned()
+	{
+		if (wordPartition == null) {
+			wordPartition = new WordPartition(corpus, vocabularySize,
+				numThreads);
+			// Daemon threads, like the ForkJoinPool of the document-parallel
+			// sweep, so that an unfinished sampler does not keep the JVM alive
+			partitionPool = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			partitionWorkers = new PartitionWorker[numThreads];
+			for (int p = 0; p < numThreads; p++)
+				partitionWorkers[p] = new PartitionWorker(p,
+					MTRandom.nextInt(Integer.MAX_VALUE));
+		}
+
+		for (int round = 0; round < numThreads; round++) {
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (int p = 0; p < numThreads; p++) {
+				partitionWorkers[p].round = round;
+				System.arraycopy(sumTopicWordCount, 0,
+					partitionWorkers[p].topicSum, 0, numTopics);
+				tasks.add(Executors.callable(partitionWorkers[p]));
+			}
+			try {
+				for (Future<Object> future : partitionPool.invokeAll(tasks))
+					future.get();
+			}
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				int delta = 0;
+				for (int p = 0; p < numThreads; p++)
+					delta += partitionWorkers[p].topicSum[tIndex]
+						- sumTopicWordCount[tIndex];
+				sumTopicWordCount[tIndex] += delta;
+			}
+		}
+		for (int p = 0; p < numThreads; p++) {
+			numChangedAssignments += partitionWorkers[p].numChanged;
+			partitionWorkers[p].numChanged = 0;
+		}
+	}
+
+	/**
+	 * Worker of the model-parallel sweep, owning one document shard
+	 */
+	private class PartitionWorker
+		implements Runnable
+	{
+		final int shard;
+		final MersenneTwister random;
+		final int[] topicSum = new int[numTopics];
+		final double[] pros = new double[numTopics];
+		int round;
+		int numChanged;
+
+		PartitionWorker(int inShard, int seed)
+		{
+			shard = inShard;
+			random = new MersenneTwister(seed);
+		}
+
+		@Override
+		public void run()
+		{
+			int block = wordPartition.blockForRound(shard, round);
+			for (int dIndex = wordPartition.shardStart[shard]; dIndex < wordPartition.shardStart[shard + 1]; dIndex++) {
+				List<Integer> document = corpus.get(dIndex);
+				int[] positions = wordPartition.tokenOrder[dIndex];
+				int end = wordPartition.blockOffsets[dIndex][block + 1];
+				for (int i = wordPartition.blockOffsets[dIndex][block]; i < end; i++) {
+					int wIndex = positions[i];
+					int topic = topicAssignments.get(dIndex, wIndex);
+					int word = document.get(wIndex);
+
+					docTopicCount.decrement(dIndex, topic);
+					topicWordCount.decrement(topic, word);
+					topicSum[topic] -= 1;
+
+					double sum = 0.0;
+					for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+						double pro = (docTopicCount.get(dIndex, tIndex) + alphas[tIndex])
+							* ((topicWordCount.get(tIndex, word) + beta) / (topicSum[tIndex] + betaSum));
+						pros[tIndex] = pro;
+						sum += pro;
+					}
+					int oldTopic = topic;
+					topic = FuncUtils.nextDiscrete(pros, sum, random);
+					if (topic != oldTopic)
+						numChanged++;
+
+					docTopicCount.increment(dIndex, topic);
+					topicWordCount.increment(topic, word);
+					topicSum[topic] += 1;
+					topicAssignments.set(dIndex, wIndex, topic);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Re-estimate the asymmetric alpha and the symmetric beta from histograms
+	 * of the current counts, using the fixed-point updates in
+	 * utility.Dirichlet
+	 */
+	public void optimizeHyperparameters()
+	{
+		int maxDocLength = 0;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++)
+			maxDocLength = Math.max(maxDocLength, sumDocTopicCount[dIndex]);
+		int[][] docTopicHistogram = new int[numTopics][maxDocLength + 1];
+		int[] docLengthHistogram = new int[maxDocLength + 1];
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			docLengthHistogram[sumDocTopicCount[dIndex]]++;
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				docTopicHistogram[tIndex][docTopicCount.get(dIndex, tIndex)]++;
+		}
+		alphaSum = Dirichlet.learnParameters(alphas, docTopicHistogram,
+			docLengthHistogram, 1.001, 1.0, 1);
+
+		int maxTopicSize = 0;
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			maxTopicSize = Math.max(maxTopicSize, sumTopicWordCount[tIndex]);
+		int[] topicWordHistogram = new int[maxTopicSize + 1];
+		int[] topicSizeHistogram = new int[maxTopicSize + 1];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			topicSizeHistogram[sumTopicWordCount[tIndex]]++;
+			for (int wIndex = 0; wIndex < vocabularySize; wIndex++)
+				topicWordHistogram[topicWordCount.get(tIndex, wIndex)]++;
+		}
+		betaSum = Dirichlet.learnSymmetricConcentration(topicWordHistogram,
+			topicSizeHistogram, vocabularySize, betaSum);
+		beta = betaSum / vocabularySize;
+
+		System.out.println("\t\tOptimized alpha sum: " + alphaSum + ", beta: "
+			+ beta);
+	}
+
+	public double computePerplexity()
+	{
+		double perplexity = Math.exp(-1.0 * computeLogLikelihood()
+			/ numWordsInCorpus);
+		if (perplexity < 0)
+			throw new RuntimeException("Illegal perplexity value: "
+				+ perplexity);
+		return perplexity;
+	}
+
+	public double computeLogLikelihood()
+	{
+		double logliCorpus = 0.0;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			int docSize = corpus.get(dIndex).size();
+			double logliDoc = 0.0;
+			for (int wIndex = 0; wIndex < docSize; wIndex++) {
+				int word = corpus.get(dIndex).get(wIndex);
+				double likeWord = 0.0;
+				for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+					likeWord += ((docTopicCount.get(dIndex, tIndex) + alphas[tIndex]) / (sumDocTopicCount[dIndex] + alphaSum))
+						* ((topicWordCount.get(tIndex, word) + beta) / (sumTopicWordCount[tIndex] + betaSum));
+				}
+				logliDoc += Math.log(likeWord);
+			}
+			logliCorpus += logliDoc;
+		}
+		return logliCorpus;
+	}
 
 	public void writeParameters()
 		throws IOException
@@ -382,6 +920,15 @@ public class GibbsSamplingLDA
 			writer.write("\n-initFile" + "\t" + tAssignsFilePath);
 		if (savestep > 0)
 			writer.write("\n-sstep" + "\t" + savestep);
+		if (optimizeInterval > 0) {
+			// -alpha above is the initial value, -beta already the learned one
+			writer.write("\n-optint" + "\t" + optimizeInterval);
+			writer.write("\n-optburnin" + "\t" + optimizeBurnIn);
+			writer.write("\n-alphas" + "\t" + "[");
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				writer.write((tIndex > 0 ? "," : "") + alphas[tIndex]);
+			writer.write("]");
+		}
 
 		writer.close();
 	}
@@ -420,7 +967,7 @@ public class GibbsSamplingLDA
 		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
 			int docSize = corpus.get(dIndex).size();
 			for (int wIndex = 0; wIndex < docSize; wIndex++) {
-				writer.write(topicAssignments.get(dIndex).get(wIndex) + " ");
+				writer.write(topicAssignments.get(dIndex, wIndex) + " ");
 			}
 			writer.write("\n");
 		}
@@ -438,7 +985,7 @@ public class GibbsSamplingLDA
 
 			Map<Integer, Integer> wordCount = new TreeMap<Integer, Integer>();
 			for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
-				wordCount.put(wIndex, topicWordCount[tIndex][wIndex]);
+				wordCount.put(wIndex, topicWordCount.get(tIndex, wIndex));
 			}
 			wordCount = FuncUtils.sortByValueDescending(wordCount);
 
@@ -465,7 +1012,7 @@ public class GibbsSamplingLDA
 			+ expName + ".phi"));
 		for (int i = 0; i < numTopics; i++) {
 			for (int j = 0; j < vocabularySize; j++) {
-				double pro = (topicWordCount[i][j] + beta)
+				double pro = (topicWordCount.get(i, j) + beta)
 					/ (sumTopicWordCount[i] + betaSum);
 				writer.write(pro + " ");
 			}
@@ -481,7 +1028,7 @@ public class GibbsSamplingLDA
 			+ expName + ".WTcount"));
 		for (int i = 0; i < numTopics; i++) {
 			for (int j = 0; j < vocabularySize; j++) {
-				writer.write(topicWordCount[i][j] + " ");
+				writer.write(topicWordCount.get(i, j) + " ");
 			}
 			writer.write("\n");
 		}
@@ -492,11 +1039,21 @@ public class GibbsSamplingLDA
 	public void writeDocTopicPros()
 		throws IOException
 	{
+		if (binaryTheta) {
+			BinaryTheta writer = new BinaryTheta(folderPath + expName
+				+ BinaryTheta.SUFFIX, numDocuments, numTopics);
+			for (int i = 0; i < numDocuments; i++)
+				for (int j = 0; j < numTopics; j++)
+					writer.write((docTopicCount.get(i, j) + alphas[j])
+						/ (sumDocTopicCount[i] + alphaSum));
+			writer.close();
+			return;
+		}
 		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
 			+ expName + ".theta"));
 		for (int i = 0; i < numDocuments; i++) {
 			for (int j = 0; j < numTopics; j++) {
-				double pro = (docTopicCount[i][j] + alpha)
+				double pro = (docTopicCount.get(i, j) + alphas[j])
 					/ (sumDocTopicCount[i] + alphaSum);
 				writer.write(pro + " ");
 			}
@@ -512,7 +1069,7 @@ public class GibbsSamplingLDA
 			+ expName + ".DTcount"));
 		for (int i = 0; i < numDocuments; i++) {
 			for (int j = 0; j < numTopics; j++) {
-				writer.write(docTopicCount[i][j] + " ");
+				writer.write(docTopicCount.get(i, j) + " ");
 			}
 			writer.write("\n");
 		}
@@ -6,14 +6,22 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.IntStream;
 
+import utility.AssignmentTable;
+import utility.BinaryTheta;
+import utility.CountTable;
+import utility.Dirichlet;
 import utility.FuncUtils;
+import utility.MTRandom;
+import utility.TermIndex;
 
 /**
  * SWB: A Java package for the SWB topic model
@@ -38,13 +46,14 @@ public class GibbsSamplingSWB
 	public int numIterations; // Number of Gibbs sampling iterations
 	public int topWords; // Number of most probable words for each topic
 
-	public double alphaSum; // alpha * numTopics
+	public double[] alphas; // Asymmetric alpha, one value per topic
+	public double alphaSum; // Sum of alphas
 	public double[] betaSum; // beta[i] * vocabularySize
 		// Sultan added
 		public double gammaSum; // gamma * 3 -> three means words categories (topic, special-words, or background word)
 
 	public List<List<Integer>> corpus; // Word ID-based corpus
-	public List<List<Integer>> topicAssignments; // Topics assignments for words in the corpus
+	public AssignmentTable topicAssignments; // Topics assignments for words in the corpus
 		//Sultan added
 		public List<List<Integer>> wordTypeAssignments; // x assignments for words in the corpus
 	
@@ -55,27 +64,28 @@ public class GibbsSamplingSWB
 														// given a word
 	public HashMap<Integer, String> id2WordVocabulary; // Vocabulary to get word
 														// given an ID
+	public TermIndex vocabulary; // Word IDs, extended by addDocuments
 	public int vocabularySize; // The number of word types in the corpus
 
 	// numDocuments * numTopics matrix
 	// Given a document: number of its words assigned to each topic
-	public int[][] docTopicCount;
+	public CountTable docTopicCount;
 	// Number of words in every document
 	public int[] sumDocTopicCount;
 	// numTopics * vocabularySize matrix
 	// Given a topic: number of times a word type assigned to the topic
-	public int[][] topicWordCount;
+	public CountTable topicWordCount;
 	// Total number of words assigned to a topic
 	public int[] sumTopicWordCount;
 		// Sultan added
 		// vocabularySize * numDocuments matrix
 		// Given a document: number of times word w is assigned to o the special-words distribution of document d 
-		public int[][] docWordCount;
+		public CountTable docWordCount;
 		// Total number of special-words  in every document
 		public int[] sumDocWordCount;
 		// vocabularySize 
 		// Given a document: number of times word w is assigned to the background distribution
-		public int [][] wordCount;
+		public CountTable wordCount;
 		public int [] sumWordCount;
 		
 		// Sultan added
@@ -90,6 +100,16 @@ public class GibbsSamplingSWB
 		
 	// Double array used to sample a topic
 	public double[] multiPros;
+	// Cached 1 / (sumTopicWordCount[t] + betaSum[0]), kept current by the
+	// sampler
+	public double[] invTopicDenominators;
+
+	// Optional kernel computing the topic weights (see TopicKernel); when
+	// set, word-major topic counts are kept as well
+	public TopicKernel kernel = null;
+	// vocabularySize * numTopics mirror of topicWordCount
+	public int[][] wordTopicCount;
+	private double[] blockSums;
 
 	// Path to the directory containing the corpus
 	public String folderPath;
@@ -100,6 +120,38 @@ public class GibbsSamplingSWB
 	public String orgExpName = "LDAmodel";
 	public String tAssignsFilePath = "";
 	public int savestep = 0;
+	// Write .theta.bin (see utility.BinaryTheta) instead of .theta
+	public boolean binaryTheta = false;
+	// Cell type of the count tables: "int", "short" or "byte" (see CountTable)
+	public String countTableType = CountTable.INT;
+	// Shard of the corpus held by this sampler (see DistributedWorker)
+	public int shardIndex = 0;
+	public int numShards = 1;
+
+	// Online training (see update): documents from firstNewDocument on were
+	// added by the last call to addDocuments
+	public int firstNewDocument = 0;
+	// Old documents resampled per incremental sweep, relative to the number
+	// of new documents
+	public double rejuvenationRate = 1.0;
+	// Keep at most this many documents, retiring the oldest (0 = keep all)
+	public int maxDocuments = 0;
+	// Probability that an old document survives an update (1 = no decay)
+	public double documentKeepProbability = 1.0;
+
+	// Optional per-iteration instrumentation, see SamplerMetrics
+	public SamplerMetrics metrics = null;
+
+	// Optional in-process clustering evaluation, see ClusteringMonitor
+	public ClusteringMonitor clusteringMonitor = null;
+	// Number of tokens whose assignment changed in the last iteration
+	public int numChangedAssignments;
+	// Optional early stopping, see StoppingPolicy
+	public StoppingPolicy stoppingPolicy = null;
+	// Re-estimate hyper-parameters every optimizeInterval iterations (0 = never)
+	// once optimizeBurnIn iterations have passed
+	public int optimizeInterval = 0;
+	public int optimizeBurnIn = 200;
 
 
 	public GibbsSamplingSWB(String pathToCorpus, int inNumTopics,
@@ -116,6 +168,30 @@ public class GibbsSamplingSWB
 		String inExpName, String pathToTAfile)
 		throws Exception
 	{
+		this(pathToCorpus, inNumTopics, inAlpha, inBeta, gamma, inNumIterations,
+			inTopWords, inExpName, pathToTAfile, CountTable.INT);
+	}
+
+	public GibbsSamplingSWB(String pathToCorpus, int inNumTopics,
+		double inAlpha, double[] inBeta,double gamma, int inNumIterations, int inTopWords,
+		String inExpName, String pathToTAfile, String inCountTableType)
+		throws Exception
+	{
+		this(pathToCorpus, inNumTopics, inAlpha, inBeta, gamma, inNumIterations,
+			inTopWords, inExpName, pathToTAfile, inCountTableType, 0, 1);
+	}
+
+	/**
+	 * Keep only shard inShardIndex of inNumShards of the corpus: document i
+	 * belongs to shard i % inNumShards. The vocabulary is still built from
+	 * the whole corpus, so word IDs agree across shards.
+	 */
+	public GibbsSamplingSWB(String pathToCorpus, int inNumTopics,
+		double inAlpha, double[] inBeta,double gamma, int inNumIterations, int inTopWords,
+		String inExpName, String pathToTAfile, String inCountTableType,
+		int inShardIndex, int inNumShards)
+		throws Exception
+	{
 
 		alpha = inAlpha;
 		this.betas = inBeta;
@@ -125,6 +201,9 @@ public class GibbsSamplingSWB
 		numIterations = inNumIterations;
 		topWords = inTopWords;
 		expName = inExpName;
+		countTableType = inCountTableType;
+		shardIndex = inShardIndex;
+		numShards = inNumShards;
 		orgExpName = expName;
 		corpusPath = pathToCorpus;
 		folderPath = pathToCorpus.substring(
@@ -140,33 +219,31 @@ public class GibbsSamplingSWB
 		numDocuments = 0;
 		numWordsInCorpus = 0;
 
-		BufferedReader br = null;
 		try {
-			int indexWord = -1;
-			br = new BufferedReader(new FileReader(pathToCorpus));
-			for (String doc; (doc = br.readLine()) != null;) {
+			vocabulary = new TermIndex(false);
+			vocabulary.readCorpus(pathToCorpus, new TermIndex.DocumentHandler()
+			{
+				int docIndex = -1;
 
-				if (doc.trim().length() == 0)
-					continue;
+				@Override
+				public void document(int[] words, int length)
+				{
+					docIndex++;
+					if ((numShards > 1) && (docIndex % numShards != shardIndex))
+						return;
 
-				String[] words = doc.trim().split("\\s+");
-				List<Integer> document = new ArrayList<Integer>();
-
-				for (String word : words) {
-					if (word2IdVocabulary.containsKey(word)) {
-						document.add(word2IdVocabulary.get(word));
-					}
-					else {
-						indexWord += 1;
-						word2IdVocabulary.put(word, indexWord);
-						id2WordVocabulary.put(indexWord, word);
-						document.add(indexWord);
-					}
+					List<Integer> document = new ArrayList<Integer>(length);
+					for (int i = 0; i < length; i++)
+						document.add(words[i]);
+					numDocuments++;
+					numWordsInCorpus += length;
+					corpus.add(document);
 				}
-
-				numDocuments++;
-				numWordsInCorpus += document.size();
-				corpus.add(document);
+			});
+			for (int id = 0; id < vocabulary.size(); id++) {
+				String word = vocabulary.term(id);
+				word2IdVocabulary.put(word, id);
+				id2WordVocabulary.put(id, word);
 			}
 		}
 		catch (Exception e) {
@@ -174,15 +251,15 @@ public class GibbsSamplingSWB
 		}
 
 		vocabularySize = word2IdVocabulary.size(); // vocabularySize = indexWord
-		docTopicCount = new int[numDocuments][numTopics];
-		topicWordCount = new int[numTopics][vocabularySize];
+		docTopicCount = CountTable.create(countTableType, numDocuments, numTopics);
+		topicWordCount = CountTable.create(countTableType, numTopics, vocabularySize);
 		sumDocTopicCount = new int[numDocuments];
 		sumTopicWordCount = new int[numTopics];
 		
 			// Sultan added
-			docWordCount = new int[numDocuments][vocabularySize];
+			docWordCount = CountTable.create(countTableType, numDocuments, vocabularySize);
 			sumDocWordCount = new int[numDocuments];
-			wordCount = new int[numDocuments][vocabularySize];
+			wordCount = CountTable.create(countTableType, numDocuments, vocabularySize);
 			sumWordCount = new int[vocabularySize];
 			
 			//Sultan added
@@ -197,6 +274,8 @@ public class GibbsSamplingSWB
 			multiPros[i] = 1.0 / numTopics;
 		}
 
+		alphas = new double[numTopics];
+		Arrays.fill(alphas, alpha);
 		alphaSum = numTopics * alpha;
 		this.betaSum = new double[3];
 		for(int i = 0; i<3 ; i++)
@@ -204,6 +283,8 @@ public class GibbsSamplingSWB
 			// Sultan added
 			gammaSum = gamma * 3;
 
+		if (numShards > 1)
+			System.out.println("Shard " + shardIndex + " of " + numShards);
 		System.out.println("Corpus size: " + numDocuments + " docs, "
 			+ numWordsInCorpus + " words");
 		System.out.println("Vocabuary size: " + vocabularySize);
@@ -214,9 +295,9 @@ public class GibbsSamplingSWB
 		System.out.println("Number of top topical words: " + topWords);
 
 		tAssignsFilePath = pathToTAfile;
-//		if (tAssignsFilePath.length() > 0)
-//			initialize(tAssignsFilePath);
-//		else
+		if (tAssignsFilePath.length() > 0)
+			initialize(tAssignsFilePath);
+		else
 			initialize();
 	}
 
@@ -226,10 +307,9 @@ public class GibbsSamplingSWB
 	public void initialize() throws IOException {
 		System.out.println("Randomly initializing topic assignments ...");
 
-		topicAssignments = new ArrayList<List<Integer>>();
+		topicAssignments = AssignmentTable.create(docLengths(), numTopics * 3);
 
 		for (int i = 0; i < numDocuments; i++) {
-			List<Integer> topics = new ArrayList<Integer>();
 			int docSize = corpus.get(i).size();
 			// Sultan added
 			for (int j = 0; j < docSize; j++) {
@@ -238,35 +318,294 @@ public class GibbsSamplingSWB
 				
 				int topic = subtopic % numTopics;
 				// Increase counts
-				docTopicCount[i][topic] += 1;
+				docTopicCount.increment(i, topic);
 				sumDocTopicCount[i] += 1;
 				
 				if(subtopic == topic){ // latent-topic distribution
 					// Increase counts
 					Nd0[i] += 1;
-					topicWordCount[topic][wordId] += 1;
+					topicWordCount.increment(topic, wordId);
 					sumTopicWordCount[topic] += 1;
 				} else if ((subtopic > topic)
 						&& (subtopic == (subtopic % (numTopics * 2)))) { // special-word distribution
 					// Increase counts
 					Nd1[i] += 1;
-					docWordCount[i][wordId] += 1;
+					docWordCount.increment(i, wordId);
 					sumDocWordCount[i] += 1;
 				} else { // background distribution
 					// Increase counts
 					Nd2[i] += 1;
-					wordCount[i][wordId] += 1;
+					wordCount.increment(i, wordId);
 					sumWordCount[wordId] += 1;
 				}
 				
-				topics.add(subtopic);
+				topicAssignments.set(i, j, subtopic);
 			}
 			Nd[i] += Nd0[i] + Nd1[i] + Nd2[i];
 //			System.out.println("doc size=> LT:["+Nd0[i]+"] SW["+Nd1[i]+"] BK["+Nd2[i]+"] = ["+Nd[i]+"]");
+		}
+	}
+
+	public int[] docLengths() {
+		int[] docLengths = new int[numDocuments];
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++)
+			docLengths[dIndex] = corpus.get(dIndex).size();
+		return docLengths;
+	}
+
+	/**
+	 * Initialize topic assignments from a file written by
+	 * writeTopicAssignments(), e.g. to continue from an earlier run
+	 */
+	public void initialize(String pathToTopicAssignmentFile) throws IOException {
+		System.out.println("Reading topic-assignment file: "
+			+ pathToTopicAssignmentFile);
+
+		topicAssignments = AssignmentTable.create(docLengths(), numTopics * 3);
+
+		BufferedReader br = new BufferedReader(new FileReader(
+			pathToTopicAssignmentFile));
+		try {
+			int docID = 0;
+			for (String line; (line = br.readLine()) != null;) {
+				if (line.trim().length() == 0)
+					continue;
+				String[] strTopics = line.trim().split("\\s+");
+				if ((docID >= numDocuments)
+					|| (strTopics.length != corpus.get(docID).size()))
+					throw new IOException(
+						"The topic modeling corpus and topic assignment file are not consistent");
+				for (int j = 0; j < strTopics.length; j++) {
+					int subtopic = Integer.parseInt(strTopics[j]);
+					addToken(docID, corpus.get(docID).get(j), subtopic, 1);
+					topicAssignments.set(docID, j, subtopic);
+				}
+				docID++;
+			}
+			if (docID != numDocuments)
+				throw new IOException(
+					"The topic modeling corpus and topic assignment file are not consistent");
+		}
+		finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Add (delta = 1) or remove (delta = -1) one token with the given
+	 * subtopic to or from the counts
+	 */
+	private void addToken(int dIndex, int word, int subtopic, int delta) {
+		int topic = subtopic % numTopics;
+		int route = subtopic / numTopics;
+		docTopicCount.add(dIndex, topic, delta);
+		sumDocTopicCount[dIndex] += delta;
+		Nd[dIndex] += delta;
+		if (route == 0) {
+			Nd0[dIndex] += delta;
+			topicWordCount.add(topic, word, delta);
+			sumTopicWordCount[topic] += delta;
+			if (wordTopicCount != null)
+				wordTopicCount[word][topic] += delta;
+		} else if (route == 1) {
+			Nd1[dIndex] += delta;
+			docWordCount.add(dIndex, word, delta);
+			sumDocWordCount[dIndex] += delta;
+		} else {
+			Nd2[dIndex] += delta;
+			wordCount.add(dIndex, word, delta);
+			sumWordCount[word] += delta;
+		}
+	}
+
+	/**
+	 * Append the documents of the given file (one per line like the corpus,
+	 * or a binary corpus) to the model, interning their new words into the
+	 * vocabulary, and randomly initialize their assignments. The count
+	 * tables grow in place, so the cost follows the number of new documents
+	 * and words.
+	 */
+	public void addDocuments(String pathToDocuments) throws IOException {
+		System.out.println("Reading new documents: " + pathToDocuments);
+
+		final List<List<Integer>> documents = new ArrayList<List<Integer>>();
+		vocabulary.readCorpus(pathToDocuments, new TermIndex.DocumentHandler()
+		{
+			@Override
+			public void document(int[] words, int length)
+			{
+				List<Integer> document = new ArrayList<Integer>(length);
+				for (int i = 0; i < length; i++)
+					document.add(words[i]);
+				documents.add(document);
+			}
+		});
+		int numNewWords = 0;
+		for (List<Integer> document : documents)
+			numNewWords += document.size();
+
+		int newNumDocuments = numDocuments + documents.size();
+		int newVocabularySize = vocabulary.size();
+		for (int id = vocabularySize; id < newVocabularySize; id++) {
+			String word = vocabulary.term(id);
+			word2IdVocabulary.put(word, id);
+			id2WordVocabulary.put(id, word);
+		}
+		docTopicCount = docTopicCount.resize(newNumDocuments, numTopics);
+		topicWordCount = topicWordCount.resize(numTopics, newVocabularySize);
+		docWordCount = docWordCount.resize(newNumDocuments, newVocabularySize);
+		wordCount = wordCount.resize(newNumDocuments, newVocabularySize);
+		sumDocTopicCount = Arrays.copyOf(sumDocTopicCount, newNumDocuments);
+		sumDocWordCount = Arrays.copyOf(sumDocWordCount, newNumDocuments);
+		sumWordCount = Arrays.copyOf(sumWordCount, newVocabularySize);
+		Nd = Arrays.copyOf(Nd, newNumDocuments);
+		Nd0 = Arrays.copyOf(Nd0, newNumDocuments);
+		Nd1 = Arrays.copyOf(Nd1, newNumDocuments);
+		Nd2 = Arrays.copyOf(Nd2, newNumDocuments);
+		if (wordTopicCount != null) {
+			wordTopicCount = Arrays.copyOf(wordTopicCount, newVocabularySize);
+			for (int wIndex = vocabularySize; wIndex < newVocabularySize; wIndex++)
+				wordTopicCount[wIndex] = new int[numTopics];
+		}
+		int[] newDocLengths = new int[documents.size()];
+		for (int i = 0; i < documents.size(); i++)
+			newDocLengths[i] = documents.get(i).size();
+		topicAssignments = topicAssignments.append(newDocLengths);
 
-			topicAssignments.add(topics);
+		firstNewDocument = numDocuments;
+		corpus.addAll(documents);
+		numDocuments = newNumDocuments;
+		numWordsInCorpus += numNewWords;
+		vocabularySize = newVocabularySize;
+		for (int i = 0; i < 3; i++)
+			betaSum[i] = betas[i] * vocabularySize;
 
+		for (int dIndex = firstNewDocument; dIndex < numDocuments; dIndex++) {
+			List<Integer> document = corpus.get(dIndex);
+			for (int wIndex = 0; wIndex < document.size(); wIndex++) {
+				int subtopic = MTRandom.nextInt(numTopics * 3);
+				addToken(dIndex, document.get(wIndex), subtopic, 1);
+				topicAssignments.set(dIndex, wIndex, subtopic);
+			}
 		}
+		System.out.println("Added " + documents.size() + " documents, "
+			+ numNewWords + " words; vocabulary size: " + vocabularySize);
+	}
+
+	/**
+	 * Retire old documents and remove their tokens from the counts. Every
+	 * document before firstNewDocument survives with probability
+	 * documentKeepProbability, so the weight of earlier updates decays
+	 * geometrically; then the oldest documents beyond maxDocuments go.
+	 */
+	public void retireDocuments() {
+		boolean[] retire = new boolean[numDocuments];
+		int numRetired = 0;
+		if (documentKeepProbability < 1)
+			for (int dIndex = 0; dIndex < firstNewDocument; dIndex++)
+				if (MTRandom.nextDouble() >= documentKeepProbability) {
+					retire[dIndex] = true;
+					numRetired++;
+				}
+		if (maxDocuments > 0)
+			for (int dIndex = 0; (dIndex < numDocuments)
+				&& (numDocuments - numRetired > maxDocuments); dIndex++)
+				if (!retire[dIndex]) {
+					retire[dIndex] = true;
+					numRetired++;
+				}
+		if (numRetired == 0)
+			return;
+
+		int[] kept = new int[numDocuments - numRetired];
+		int numKept = 0;
+		int newFirstNewDocument = 0;
+		List<List<Integer>> keptCorpus = new ArrayList<List<Integer>>(kept.length);
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			List<Integer> document = corpus.get(dIndex);
+			if (retire[dIndex]) {
+				for (int wIndex = 0; wIndex < document.size(); wIndex++)
+					addToken(dIndex, document.get(wIndex),
+						topicAssignments.get(dIndex, wIndex), -1);
+				numWordsInCorpus -= document.size();
+				continue;
+			}
+			if (dIndex < firstNewDocument)
+				newFirstNewDocument++;
+			kept[numKept++] = dIndex;
+			keptCorpus.add(document);
+		}
+
+		docTopicCount = docTopicCount.selectRows(kept);
+		docWordCount = docWordCount.selectRows(kept);
+		wordCount = wordCount.selectRows(kept);
+		sumDocTopicCount = select(sumDocTopicCount, kept);
+		sumDocWordCount = select(sumDocWordCount, kept);
+		Nd = select(Nd, kept);
+		Nd0 = select(Nd0, kept);
+		Nd1 = select(Nd1, kept);
+		Nd2 = select(Nd2, kept);
+		topicAssignments = topicAssignments.select(kept);
+		corpus = keptCorpus;
+		numDocuments = numKept;
+		firstNewDocument = newFirstNewDocument;
+		System.out.println("Retired " + numRetired + " documents, "
+			+ numDocuments + " left");
+	}
+
+	private static int[] select(int[] values, int[] indices) {
+		int[] selected = new int[indices.length];
+		for (int i = 0; i < indices.length; i++)
+			selected[i] = values[indices[i]];
+		return selected;
+	}
+
+	/**
+	 * Run numSweeps sweeps over the documents added by addDocuments(), each
+	 * together with a fresh uniform sample of rejuvenationRate times as many
+	 * old documents, so that the cost follows the number of new documents
+	 * rather than the size of the corpus
+	 */
+	public void sampleIncrementally(int numSweeps) {
+		int numOld = firstNewDocument;
+		int numRejuvenated = (int) Math.min(numOld,
+			Math.round(rejuvenationRate * (numDocuments - firstNewDocument)));
+		for (int sweep = 1; sweep <= numSweeps; sweep++) {
+			numChangedAssignments = 0;
+			refreshDenominators();
+			// Floyd's algorithm: numRejuvenated distinct old documents
+			Set<Integer> rejuvenated = new HashSet<Integer>();
+			for (int j = numOld - numRejuvenated; j < numOld; j++) {
+				int dIndex = MTRandom.nextInt(j + 1);
+				rejuvenated.add(rejuvenated.contains(dIndex) ? j : dIndex);
+			}
+			for (int dIndex : rejuvenated)
+				sampleDocument(dIndex);
+			for (int dIndex = firstNewDocument; dIndex < numDocuments; dIndex++)
+				sampleDocument(dIndex);
+			System.out.println("\tIncremental sweep " + sweep + ": "
+				+ numChangedAssignments + " changed assignments");
+		}
+	}
+
+	/**
+	 * Incremental update of a model loaded from an earlier run: add the new
+	 * documents, retire old ones, run numSweeps incremental sweeps and write
+	 * the outputs. The next update can start from the ".corpus" and
+	 * ".topicAssignments" files written here.
+	 */
+	public void update(String pathToNewDocuments, int numSweeps)
+		throws IOException
+	{
+		addDocuments(pathToNewDocuments);
+		retireDocuments();
+		sampleIncrementally(numSweeps);
+
+		expName = orgExpName;
+		writeParameters();
+		write();
+		writeCorpus();
+		System.out.println("Update completed!");
 	}
 
 	public void inference()
@@ -274,13 +613,20 @@ public class GibbsSamplingSWB
 	{
 		System.out.println("Running Gibbs sampling inference: ");
 
+		long inferenceStartTime = System.nanoTime();
 		for (int iter = 1; iter <= numIterations; iter++) {
 
 //			System.out.println("\tSampling iteration: " + (iter));
+			long startTime = System.nanoTime();
 			if((iter%10) == 0)
 				System.out.println(computePerplexity());
+			long perplexityTime = System.nanoTime();
 
 			sampleInSingleIteration();
+			if ((optimizeInterval > 0) && (iter > optimizeBurnIn)
+				&& (iter % optimizeInterval == 0))
+				optimizeHyperparameters();
+			long samplingTime = System.nanoTime();
 
 			if ((savestep > 0) && (iter % savestep == 0)
 				&& (iter < numIterations)) {
@@ -289,6 +635,30 @@ public class GibbsSamplingSWB
 				expName = orgExpName + "-" + iter;
 				write();
 			}
+
+			if (metrics != null) {
+				long topicTokens = 0, specialWordTokens = 0, backgroundTokens = 0;
+				for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+					topicTokens += Nd0[dIndex];
+					specialWordTokens += Nd1[dIndex];
+					backgroundTokens += Nd2[dIndex];
+				}
+				metrics.record(iter, numWordsInCorpus, samplingTime
+					- perplexityTime, perplexityTime - startTime,
+					System.nanoTime() - samplingTime, numChangedAssignments,
+					topicTokens, specialWordTokens, backgroundTokens);
+			}
+
+			if (clusteringMonitor != null)
+				clusteringMonitor.record(iter, System.nanoTime()
+					- inferenceStartTime, docTopicCount, numDocuments, alphas);
+
+			if ((stoppingPolicy != null)
+				&& stoppingPolicy.shouldStop(iter, numChangedAssignments,
+					numWordsInCorpus, this::computeLogLikelihood)) {
+				System.out.println("\tStopping after " + iter + " iterations");
+				break;
+			}
 		}
 		expName = orgExpName;
 
@@ -300,76 +670,253 @@ public class GibbsSamplingSWB
 
 	}
 
+	/**
+	 * Recompute the cached reciprocal topic denominators, e.g. after the
+	 * hyper-parameters changed
+	 */
+	public void refreshDenominators() {
+		if (invTopicDenominators == null)
+			invTopicDenominators = new double[numTopics];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			invTopicDenominators[tIndex] = 1.0 / (sumTopicWordCount[tIndex] + betaSum[0]);
+		if (kernel != null) {
+			if (!(docTopicCount instanceof CountTable.IntCountTable))
+				throw new IllegalStateException(
+						"The topic kernel requires int count tables");
+			if (wordTopicCount == null) {
+				wordTopicCount = new int[vocabularySize][numTopics];
+				for (int tIndex = 0; tIndex < numTopics; tIndex++)
+					for (int wIndex = 0; wIndex < vocabularySize; wIndex++)
+						wordTopicCount[wIndex][tIndex] = topicWordCount.get(tIndex, wIndex);
+			}
+			blockSums = new double[kernel.numBlocks(numTopics)];
+		}
+	}
+
 	public void sampleInSingleIteration() {
-		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
-			int docSize = corpus.get(dIndex).size();
-			for (int wIndex = 0; wIndex < docSize; wIndex++) {
-				// Get current word and its topic
-				int word = corpus.get(dIndex).get(wIndex);
-				int subtopic = topicAssignments.get(dIndex).get(wIndex);
-				int topic = subtopic % numTopics;
-				
-				// Decrease counts
-				docTopicCount[dIndex][topic] -= 1;
-				sumDocTopicCount[dIndex] -= 1;
-				Nd[dIndex] -= 1;
-				
-				if (topic == subtopic) {
-					Nd0[dIndex] -= 1;
-					topicWordCount[topic][word] -= 1;
-					sumTopicWordCount[topic] -= 1;	
-				}else if((subtopic > topic) && (subtopic == (subtopic%(numTopics*2)))){
-					// Decrease counts
-					Nd1[dIndex] -= 1;
-					docWordCount[dIndex][word] -= 1;
-					sumDocWordCount[dIndex] -= 1;
-				}else{
-					// Decrease counts
-					Nd2[dIndex] -= 1;
-					wordCount[dIndex][word] -= 1;
-					sumWordCount[word] -= 1;
-				}
-				
-				// Sample a topic and ternary indicator variable x
+		numChangedAssignments = 0;
+		refreshDenominators();
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++)
+			sampleDocument(dIndex);
+	}
+
+	/**
+	 * Resample every token of one document; refreshDenominators() must have
+	 * been called since the hyper-parameters last changed
+	 */
+	private void sampleDocument(int dIndex) {
+		double gamma3 = 3 * gamma;
+		List<Integer> document = corpus.get(dIndex);
+		int docSize = document.size();
+
+		// With the current token removed, the document totals are the same
+		// for every token of the document
+		double invRouteDenominator = 1.0 / (docSize - 1 + gamma3);
+		double invDocTopicDenominator = 1.0 / (docSize - 1 + alphaSum);
+		double invSpecialDenominator = 0, invBackgroundDenominator = 0;
+		int cachedSumDocWordCount = -1;
+
+		for (int wIndex = 0; wIndex < docSize; wIndex++) {
+			// Get current word and its topic
+			int word = document.get(wIndex);
+			int subtopic = topicAssignments.get(dIndex, wIndex);
+			int topic = subtopic % numTopics;
+			int route = subtopic / numTopics;
+
+			// Decrease counts
+			docTopicCount.decrement(dIndex, topic);
+			sumDocTopicCount[dIndex] -= 1;
+			Nd[dIndex] -= 1;
+			if (route == 0) {
+				Nd0[dIndex] -= 1;
+				topicWordCount.decrement(topic, word);
+				sumTopicWordCount[topic] -= 1;
+				if (kernel != null)
+					wordTopicCount[word][topic] -= 1;
+				invTopicDenominators[topic] = 1.0 / (sumTopicWordCount[topic] + betaSum[0]);
+			}else if (route == 1) {
+				Nd1[dIndex] -= 1;
+				docWordCount.decrement(dIndex, word);
+				sumDocWordCount[dIndex] -= 1;
+			}else{
+				Nd2[dIndex] -= 1;
+				wordCount.decrement(dIndex, word);
+				sumWordCount[word] -= 1;
+			}
+			if (sumDocWordCount[dIndex] != cachedSumDocWordCount) {
+				cachedSumDocWordCount = sumDocWordCount[dIndex];
+				invSpecialDenominator = 1.0 / (cachedSumDocWordCount + betaSum[1]);
+				invBackgroundDenominator = 1.0 / (cachedSumDocWordCount + betaSum[2]);
+			}
+
+			// Sample a topic and ternary indicator variable x. The special-word
+			// and background weights do not depend on the topic.
+			double topicFactor = (Nd0[dIndex] + gamma) * invRouteDenominator
+					* invDocTopicDenominator;
+			double topicSum = 0.0;
+			if (kernel != null) {
+				topicSum = kernel.fill(numTopics,
+						((CountTable.IntCountTable) docTopicCount).row(dIndex), alphas,
+						wordTopicCount[word], betas[0], invTopicDenominators,
+						topicFactor, multiPros, blockSums);
+			} else {
 				for (int tIndex = 0; tIndex < numTopics; tIndex++) {
-					multiPros[tIndex] = ((Nd0[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-							* ((docTopicCount[dIndex][tIndex] + alpha) / (sumDocTopicCount[dIndex] + alphaSum))
-							* ((topicWordCount[tIndex][word] + betas[0]) / (sumTopicWordCount[tIndex] + betaSum[0]));
-					
-					multiPros[tIndex+numTopics] = ((Nd1[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-							* ((docWordCount[dIndex][word] + betas[1]) / (sumDocWordCount[dIndex] + betaSum[1]));
-					
-					multiPros[tIndex+(numTopics*2)] = ((Nd2[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-							* ((wordCount[dIndex][word] + betas[2]) / (sumDocWordCount[dIndex] + betaSum[2]));
+					double pro = topicFactor * (docTopicCount.get(dIndex, tIndex) + alphas[tIndex])
+							* (topicWordCount.get(tIndex, word) + betas[0])
+							* invTopicDenominators[tIndex];
+					multiPros[tIndex] = pro;
+					topicSum += pro;
 				}
-				
-				subtopic = FuncUtils.nextDiscrete(multiPros);
-				topic = subtopic % numTopics;
-			
-				// Increase counts
-				docTopicCount[dIndex][topic] -= 1;
-				sumDocTopicCount[dIndex] -= 1;
-				Nd[dIndex] += 1;
-				if(topic == subtopic){
-					Nd0[dIndex] += 1;
-					topicWordCount[topic][word] += 1;
-					sumTopicWordCount[topic] += 1;
-				}else if((subtopic > topic) && (subtopic == (subtopic%(numTopics*2)))){
-					Nd1[dIndex] += 1;
-					docWordCount[dIndex][word] += 1;
-					sumDocWordCount[dIndex] += 1;
-				}else{
-					Nd2[dIndex] += 1;
-					wordCount[dIndex][word] += 1;
-					sumWordCount[word] += 1;
+			}
+			double specialPro = (Nd1[dIndex] + gamma) * invRouteDenominator
+					* (docWordCount.get(dIndex, word) + betas[1]) * invSpecialDenominator;
+			double backgroundPro = (Nd2[dIndex] + gamma) * invRouteDenominator
+					* (wordCount.get(dIndex, word) + betas[2]) * invBackgroundDenominator;
+			double sum = topicSum + numTopics * (specialPro + backgroundPro);
+
+			int oldSubtopic = subtopic;
+			if (kernel != null) {
+				// The special-word and background slots hold equal weights, so
+				// only the topic slots need a search
+				double r = MTRandom.nextDouble() * sum;
+				if (r < topicSum) {
+					subtopic = FuncUtils.findInBlocks(multiPros, blockSums,
+							kernel.blockSize(), numTopics, r);
+				} else if ((r -= topicSum) < numTopics * specialPro) {
+					subtopic = numTopics + Math.min(numTopics - 1, (int) (r / specialPro));
+				} else {
+					r -= numTopics * specialPro;
+					subtopic = numTopics * 2 + Math.min(numTopics - 1, (int) (r / backgroundPro));
 				}
-				// Update topic assignments
-				topicAssignments.get(dIndex).set(wIndex, subtopic);
+			} else {
+				Arrays.fill(multiPros, numTopics, numTopics * 2, specialPro);
+				Arrays.fill(multiPros, numTopics * 2, numTopics * 3, backgroundPro);
+				subtopic = FuncUtils.nextDiscrete(multiPros, sum);
+			}
+			topic = subtopic % numTopics;
+			route = subtopic / numTopics;
+			if (subtopic != oldSubtopic)
+				numChangedAssignments++;
+
+			// Increase counts
+			docTopicCount.increment(dIndex, topic);
+			sumDocTopicCount[dIndex] += 1;
+			Nd[dIndex] += 1;
+			if (route == 0) {
+				Nd0[dIndex] += 1;
+				topicWordCount.increment(topic, word);
+				sumTopicWordCount[topic] += 1;
+				if (kernel != null)
+					wordTopicCount[word][topic] += 1;
+				invTopicDenominators[topic] = 1.0 / (sumTopicWordCount[topic] + betaSum[0]);
+			}else if (route == 1) {
+				Nd1[dIndex] += 1;
+				docWordCount.increment(dIndex, word);
+				sumDocWordCount[dIndex] += 1;
+			}else{
+				Nd2[dIndex] += 1;
+				wordCount.increment(dIndex, word);
+				sumWordCount[word] += 1;
 			}
+			// Update topic assignments
+			topicAssignments.set(dIndex, wIndex, subtopic);
 		}
 	}
 
+	/**
+	 * Re-estimate alpha (asymmetric), the three betas and gamma from
+	 * histograms of the current counts, using the fixed-point updates in
+	 * utility.Dirichlet. The special-word and background counts are only
+	 * visited for words that occur in each document.
+	 */
+	public void optimizeHyperparameters() {
+		int maxDocLength = 0;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++)
+			maxDocLength = Math.max(maxDocLength, sumDocTopicCount[dIndex]);
+
+		// alpha: document-topic counts
+		int[][] docTopicHistogram = new int[numTopics][maxDocLength + 1];
+		int[] docLengthHistogram = new int[maxDocLength + 1];
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			docLengthHistogram[sumDocTopicCount[dIndex]]++;
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				docTopicHistogram[tIndex][docTopicCount.get(dIndex, tIndex)]++;
+		}
+		alphaSum = Dirichlet.learnParameters(alphas, docTopicHistogram,
+				docLengthHistogram, 1.001, 1.0, 1);
+
+		// beta[0]: topic-word counts
+		int maxTopicSize = 0;
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			maxTopicSize = Math.max(maxTopicSize, sumTopicWordCount[tIndex]);
+		int[] countHistogram = new int[maxTopicSize + 1];
+		int[] sizeHistogram = new int[maxTopicSize + 1];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			sizeHistogram[sumTopicWordCount[tIndex]]++;
+			for (int wIndex = 0; wIndex < vocabularySize; wIndex++)
+				countHistogram[topicWordCount.get(tIndex, wIndex)]++;
+		}
+		betaSum[0] = Dirichlet.learnSymmetricConcentration(countHistogram,
+				sizeHistogram, vocabularySize, betaSum[0]);
+
+		// beta[1] and beta[2]: document-specific special-word and background
+		// counts, the rows the sampler draws both routes from
+		countHistogram = new int[maxDocLength + 1];
+		sizeHistogram = new int[maxDocLength + 1];
+		int[] backgroundCountHistogram = new int[maxDocLength + 1];
+		int[] backgroundSizeHistogram = new int[maxDocLength + 1];
+		int[] lastSeenInDoc = new int[vocabularySize];
+		Arrays.fill(lastSeenInDoc, -1);
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			sizeHistogram[sumDocWordCount[dIndex]]++;
+			backgroundSizeHistogram[Nd2[dIndex]]++;
+			List<Integer> document = corpus.get(dIndex);
+			for (int wIndex = 0; wIndex < document.size(); wIndex++) {
+				int word = document.get(wIndex);
+				if (lastSeenInDoc[word] == dIndex)
+					continue;
+				lastSeenInDoc[word] = dIndex;
+				countHistogram[docWordCount.get(dIndex, word)]++;
+				backgroundCountHistogram[wordCount.get(dIndex, word)]++;
+			}
+		}
+		betaSum[1] = Dirichlet.learnSymmetricConcentration(countHistogram,
+				sizeHistogram, vocabularySize, betaSum[1]);
+		betaSum[2] = Dirichlet.learnSymmetricConcentration(
+				backgroundCountHistogram, backgroundSizeHistogram,
+				vocabularySize, betaSum[2]);
+
+		for (int i = 0; i < 3; i++)
+			betas[i] = betaSum[i] / vocabularySize;
+
+		// gamma: per-document route counts
+		countHistogram = new int[maxDocLength + 1];
+		sizeHistogram = new int[maxDocLength + 1];
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			sizeHistogram[Nd[dIndex]]++;
+			countHistogram[Nd0[dIndex]]++;
+			countHistogram[Nd1[dIndex]]++;
+			countHistogram[Nd2[dIndex]]++;
+		}
+		gammaSum = Dirichlet.learnSymmetricConcentration(countHistogram,
+				sizeHistogram, 3, gammaSum);
+		gamma = gammaSum / 3;
+
+		System.out.println("\t\tOptimized alpha sum: " + alphaSum + ", betas: ["
+				+ betas[0] + "," + betas[1] + "," + betas[2] + "], gamma: "
+				+ gamma);
+	}
+
 	public double computePerplexity() {
+		double perplexity = Math.exp(-1.0 * computeLogLikelihood()
+			/ numWordsInCorpus);
+		if (perplexity < 0)
+			throw new RuntimeException("Illegal perplexity value: "
+					+ perplexity);
+		return perplexity;
+	}
+
+	public double computeLogLikelihood() {
 		double logliCorpus = 0.0;
 		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
 			int docSize = corpus.get(dIndex).size();
@@ -379,22 +926,18 @@ public class GibbsSamplingSWB
 				double likeWord = 0.0;
 				for (int tIndex = 0; tIndex < numTopics; tIndex++) {
 					likeWord += ((Nd0[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-							* ((docTopicCount[dIndex][tIndex] + alpha) / (sumDocTopicCount[dIndex] + alphaSum))
-							* ((topicWordCount[tIndex][word] + betas[0]) / (sumTopicWordCount[tIndex] + betaSum[0]));
+							* ((docTopicCount.get(dIndex, tIndex) + alphas[tIndex]) / (sumDocTopicCount[dIndex] + alphaSum))
+							* ((topicWordCount.get(tIndex, word) + betas[0]) / (sumTopicWordCount[tIndex] + betaSum[0]));
 				}
 				likeWord += ((Nd1[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-						* ((docWordCount[dIndex][word] + betas[1]) / (sumDocWordCount[dIndex] + betaSum[1]));
+						* ((docWordCount.get(dIndex, word) + betas[1]) / (sumDocWordCount[dIndex] + betaSum[1]));
 				likeWord += ((Nd2[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-						* ((wordCount[dIndex][word] + betas[2]) / (sumDocWordCount[dIndex] + betaSum[2]));
+						* ((wordCount.get(dIndex, word) + betas[2]) / (sumDocWordCount[dIndex] + betaSum[2]));
 				logliDoc += Math.log(likeWord);
 			}
 			logliCorpus += logliDoc;
 		}
-		double perplexity = Math.exp(-1.0 * logliCorpus / numWordsInCorpus);
-		if (perplexity < 0)
-			throw new RuntimeException("Illegal perplexity value: "
-					+ perplexity);
-		return perplexity;
+		return logliCorpus;
 	}
 
 	public void writeParameters()
@@ -402,11 +945,13 @@ public class GibbsSamplingSWB
 	{
 		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
 			+ expName + ".paras"));
-		writer.write("-model" + "\t" + "LDA");
+		writer.write("-model" + "\t" + "SWB");
 		writer.write("\n-corpus" + "\t" + corpusPath);
 		writer.write("\n-ntopics" + "\t" + numTopics);
 		writer.write("\n-alpha" + "\t" + alpha);
-		writer.write("\n-beta" + "\t" + "[" + betas[0] + "," + betas[1] + "]");
+		writer.write("\n-beta" + "\t" + "[" + betas[0] + "," + betas[1] + ","
+			+ betas[2] + "]");
+		writer.write("\n-gamma" + "\t" + gamma);
 		writer.write("\n-niters" + "\t" + numIterations);
 		writer.write("\n-twords" + "\t" + topWords);
 		writer.write("\n-name" + "\t" + expName);
@@ -414,6 +959,15 @@ public class GibbsSamplingSWB
 			writer.write("\n-initFile" + "\t" + tAssignsFilePath);
 		if (savestep > 0)
 			writer.write("\n-sstep" + "\t" + savestep);
+		if (optimizeInterval > 0) {
+			// -beta and -gamma above already hold the learned values
+			writer.write("\n-optint" + "\t" + optimizeInterval);
+			writer.write("\n-optburnin" + "\t" + optimizeBurnIn);
+			writer.write("\n-alphas" + "\t" + "[");
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				writer.write((tIndex > 0 ? "," : "") + alphas[tIndex]);
+			writer.write("]");
+		}
 
 		writer.close();
 	}
@@ -444,6 +998,26 @@ public class GibbsSamplingSWB
 		writer.close();
 	}
 
+	/**
+	 * Write the documents as words, one per line, in the corpus format
+	 */
+	public void writeCorpus()
+		throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".corpus"));
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			List<Integer> document = corpus.get(dIndex);
+			for (int wIndex = 0; wIndex < document.size(); wIndex++) {
+				if (wIndex > 0)
+					writer.write(" ");
+				writer.write(id2WordVocabulary.get(document.get(wIndex)));
+			}
+			writer.write("\n");
+		}
+		writer.close();
+	}
+
 	public void writeTopicAssignments()
 		throws IOException
 	{
@@ -452,7 +1026,7 @@ public class GibbsSamplingSWB
 		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
 			int docSize = corpus.get(dIndex).size();
 			for (int wIndex = 0; wIndex < docSize; wIndex++) {
-				writer.write(topicAssignments.get(dIndex).get(wIndex) + " ");
+				writer.write(topicAssignments.get(dIndex, wIndex) + " ");
 			}
 			writer.write("\n");
 		}
@@ -470,21 +1044,21 @@ public class GibbsSamplingSWB
 			for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
 				/*
 				 * double prob = ((Nd0[dIndex] + gamma) / (Nd[dIndex] + 3 *
-				 * gamma)) ((docTopicCount[dIndex][tIndex] + alpha) /
+				 * gamma)) ((docTopicCount.get(dIndex, tIndex) + alphas[tIndex]) /
 				 * (sumDocTopicCount[dIndex] + alphaSum))
-				 * ((topicWordCount[tIndex][wIndex] + betas[0]) /
+				 * ((topicWordCount.get(tIndex, wIndex) + betas[0]) /
 				 * (sumTopicWordCount[tIndex] + betaSum[0]));
 				 * 
 				 * prob += ((Nd1[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-				 * ((docWordCount[dIndex][wIndex] + betas[1]) /
+				 * ((docWordCount.get(dIndex, wIndex) + betas[1]) /
 				 * (sumDocWordCount[dIndex] + betaSum[1]));
 				 * 
 				 * prob += ((Nd2[dIndex] + gamma) / (Nd[dIndex] + 3 * gamma))
-				 * ((wordCount[dIndex][wIndex] + betas[2]) /
+				 * ((wordCount.get(dIndex, wIndex) + betas[2]) /
 				 * (sumDocWordCount[dIndex] + betaSum[2]));
 				 */
 
-				double prob = (topicWordCount[tIndex][wIndex] + betas[0])
+				double prob = (topicWordCount.get(tIndex, wIndex) + betas[0])
 						/ (sumTopicWordCount[tIndex] + betaSum[0]);
 				wordCount.put(wIndex, prob);
 			}
@@ -513,7 +1087,7 @@ public class GibbsSamplingSWB
 			+ expName + ".phi"));
 		for (int i = 0; i < numTopics; i++) {
 			for (int j = 0; j < vocabularySize; j++) {
-				double pro = (topicWordCount[i][j] + betas[0])
+				double pro = (topicWordCount.get(i, j) + betas[0])
 					/ (sumTopicWordCount[i] + betaSum[0]);
 				writer.write(pro + " ");
 			}
@@ -529,7 +1103,7 @@ public class GibbsSamplingSWB
 			+ expName + ".WTcount"));
 		for (int i = 0; i < numTopics; i++) {
 			for (int j = 0; j < vocabularySize; j++) {
-				writer.write(topicWordCount[i][j] + " ");
+				writer.write(topicWordCount.get(i, j) + " ");
 			}
 			writer.write("\n");
 		}
@@ -540,11 +1114,21 @@ public class GibbsSamplingSWB
 	public void writeDocTopicPros()
 		throws IOException
 	{
+		if (binaryTheta) {
+			BinaryTheta writer = new BinaryTheta(folderPath + expName
+				+ BinaryTheta.SUFFIX, numDocuments, numTopics);
+			for (int i = 0; i < numDocuments; i++)
+				for (int j = 0; j < numTopics; j++)
+					writer.write((docTopicCount.get(i, j) + alphas[j])
+						/ (sumDocTopicCount[i] + alphaSum));
+			writer.close();
+			return;
+		}
 		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
 			+ expName + ".theta"));
 		for (int i = 0; i < numDocuments; i++) {
 			for (int j = 0; j < numTopics; j++) {
-				double pro = (docTopicCount[i][j] + alpha)
+				double pro = (docTopicCount.get(i, j) + alphas[j])
 					/ (sumDocTopicCount[i] + alphaSum);
 				writer.write(pro + " ");
 			}
@@ -560,13 +1144,99 @@ public class GibbsSamplingSWB
 			+ expName + ".DTcount"));
 		for (int i = 0; i < numDocuments; i++) {
 			for (int j = 0; j < numTopics; j++) {
-				writer.write(docTopicCount[i][j] + " ");
+				writer.write(docTopicCount.get(i, j) + " ");
 			}
 			writer.write("\n");
 		}
 		writer.close();
 	}
 
+	/**
+	 * Write the most probable special words of every document. Only words
+	 * occurring in a document can have a non-zero special-word count, so each
+	 * document is scanned over its own tokens rather than the vocabulary.
+	 * Documents are ranked in parallel and written in corpus order.
+	 */
+	public void writeDocSpecialWordPros()
+		throws IOException
+	{
+		String[] lines = new String[numDocuments];
+		IntStream.range(0, numDocuments).parallel()
+			.forEach(dIndex -> lines[dIndex] = topSpecialWords(dIndex));
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".specialWords"));
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			writer.write(lines[dIndex]);
+			writer.write("\n");
+		}
+		writer.close();
+	}
+
+	private String topSpecialWords(int dIndex)
+	{
+		List<Integer> document = corpus.get(dIndex);
+		int docSize = document.size();
+
+		// Pack (count, word) into a long so ranking is a primitive sort
+		long[] entries = new long[docSize];
+		int numEntries = 0;
+		for (int wIndex = 0; wIndex < docSize; wIndex++) {
+			int word = document.get(wIndex);
+			int count = docWordCount.get(dIndex, word);
+			if (count > 0)
+				entries[numEntries++] = ((long) count << 32) | word;
+		}
+		Arrays.sort(entries, 0, numEntries);
+
+		double norm = sumDocWordCount[dIndex] + betaSum[1];
+		StringBuilder line = new StringBuilder();
+		line.append("Doc").append(dIndex).append(":");
+		int count = 0;
+		long previous = -1;
+		for (int i = numEntries - 1; i >= 0 && count < topWords; i--) {
+			if (entries[i] == previous)
+				continue;
+			previous = entries[i];
+			int word = (int) entries[i];
+			double pro = ((entries[i] >>> 32) + betas[1]) / norm;
+			line.append(" ").append(id2WordVocabulary.get(word)).append(":")
+				.append(pro);
+			count += 1;
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Write the corpus-wide background distribution, most probable words
+	 * first. Words never assigned to the background share the smoothing mass
+	 * and are omitted.
+	 */
+	public void writeBackgroundWordPros()
+		throws IOException
+	{
+		long sumBackground = 0;
+		int numEntries = 0;
+		long[] entries = new long[vocabularySize];
+		for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
+			sumBackground += sumWordCount[wIndex];
+			if (sumWordCount[wIndex] > 0)
+				entries[numEntries++] = ((long) sumWordCount[wIndex] << 32)
+					| wIndex;
+		}
+		Arrays.sort(entries, 0, numEntries);
+
+		double norm = sumBackground + betaSum[2];
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".background"));
+		for (int i = numEntries - 1; i >= 0; i--) {
+			double pro = ((entries[i] >>> 32) + betas[2]) / norm;
+			writer.write(id2WordVocabulary.get((int) entries[i]) + " " + pro
+				+ "\n");
+		}
+		writer.close();
+	}
+
 	public void write()
 		throws IOException
 	{
@@ -574,6 +1244,8 @@ public class GibbsSamplingSWB
 		writeDocTopicPros();
 		writeTopicAssignments();
 		writeTopicWordPros();
+		writeDocSpecialWordPros();
+		writeBackgroundWordPros();
 	}
 
 	public static void main(String args[])
@@ -0,0 +1,656 @@
+package models;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import utility.BinaryTheta;
+import utility.Dirichlet;
+import utility.FuncUtils;
+import utility.MTRandom;
+import utility.MersenneTwister;
+import utility.TermIndex;
+
+/**
+ * Online variational Bayes for LDA, as described in:
+ *
+ * Matthew D. Hoffman, David M. Blei and Francis Bach. 2010. Online Learning
+ * for Latent Dirichlet Allocation. In Advances in Neural Information
+ * Processing Systems 23, pages 856-864.
+ *
+ * An alternative engine to GibbsSamplingLDA for large corpora: the corpus is
+ * streamed from disk in mini-batches, so only the vocabulary and the
+ * numTopics * vocabularySize variational parameters lambda are held in
+ * memory. The documents of a mini-batch are fitted in parallel, after which
+ * lambda moves towards the mini-batch estimate with step size
+ * (tau0 + t)^-kappa. One or two passes are usually enough. The corpus may
+ * be text or binary (see utility.TermIndex.readCorpus); a binary corpus is
+ * streamed without hashing its words.
+ *
+ * lambda is stored as scale * mu + shift, so that the decay of the whole
+ * matrix in every update costs O(1) and an update only touches the words of
+ * the mini-batch.
+ *
+ * The outputs (.phi, .theta, .topWords, .paras) have the formats of
+ * GibbsSamplingLDA; theta is inferred in a final streaming pass.
+ */
+public class OnlineVBLDA
+{
+	public double alpha; // Hyper-parameter alpha of the topic proportions
+	public double beta; // Hyper-parameter eta of the topics
+	public int numTopics; // Number of topics
+	public int numPasses; // Number of passes over the corpus
+	public int topWords; // Number of most probable words for each topic
+
+	public int batchSize = 256; // Documents per mini-batch
+	public double tau0 = 1024; // Down-weights the early mini-batches
+	public double kappa = 0.7; // Forgetting rate, in (0.5, 1]
+	public int numThreads = Runtime.getRuntime().availableProcessors();
+	// Per-document fitting stops when the mean change of gamma falls below
+	// this or after maxDocumentIterations iterations
+	public double gammaThreshold = 0.001;
+	public int maxDocumentIterations = 100;
+
+	public int numDocuments; // Number of documents in the corpus
+	public long numWordsInCorpus; // Number of words in the corpus
+
+	public HashMap<String, Integer> word2IdVocabulary; // Vocabulary to get ID
+														// given a word
+	public HashMap<Integer, String> id2WordVocabulary; // Vocabulary to get word
+														// given an ID
+	public TermIndex vocabulary; // Word IDs of the streamed documents
+	public int vocabularySize; // The number of word types in the corpus
+
+	// lambda[t][w] = lambdaScale * mu[t][w] + lambdaShift
+	private double[][] mu;
+	private double[] sumMu;
+	private double lambdaScale = 1.0;
+	private double lambdaShift = 0.0;
+	private int numUpdates = 0;
+
+	// Path to the directory containing the corpus
+	public String folderPath;
+	// Path to the topic modeling corpus
+	public String corpusPath;
+	public String expName = "LDAmodel";
+	// Write .theta.bin (see utility.BinaryTheta) instead of .theta
+	public boolean binaryTheta = false;
+
+	private ExecutorService pool;
+	private MersenneTwister[] randoms;
+
+	public OnlineVBLDA(String pathToCorpus, int inNumTopics, double inAlpha,
+		double inBeta, int inNumPasses, int inTopWords, String inExpName)
+		throws IOException
+	{
+		alpha = inAlpha;
+		beta = inBeta;
+		numTopics = inNumTopics;
+		numPasses = inNumPasses;
+		topWords = inTopWords;
+		expName = inExpName;
+		corpusPath = pathToCorpus;
+		folderPath = pathToCorpus.substring(
+			0,
+			Math.max(pathToCorpus.lastIndexOf("/"),
+				pathToCorpus.lastIndexOf("\\")) + 1);
+
+		// Streaming pass over the corpus to build the vocabulary, with the
+		// word IDs GibbsSamplingLDA would assign; a binary corpus (see
+		// utility.BinaryCorpus) is read without hashing
+		System.out.println("Reading vocabulary of topic modeling corpus: "
+			+ pathToCorpus);
+		vocabulary = new TermIndex(false);
+		vocabulary.readCorpus(pathToCorpus, new TermIndex.DocumentHandler()
+		{
+			@Override
+			public void document(int[] words, int length)
+			{
+				numDocuments++;
+				numWordsInCorpus += length;
+			}
+		});
+		vocabularySize = vocabulary.size();
+		word2IdVocabulary = new HashMap<String, Integer>();
+		id2WordVocabulary = new HashMap<Integer, String>();
+		for (int id = 0; id < vocabularySize; id++) {
+			String word = vocabulary.term(id);
+			word2IdVocabulary.put(word, id);
+			id2WordVocabulary.put(id, word);
+		}
+
+		mu = new double[numTopics][vocabularySize];
+		sumMu = new double[numTopics];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
+				// Close to the Gamma(100, 1/100) initialization of Hoffman et
+				// al.: mean 1, small noise to break the symmetry
+				mu[tIndex][wIndex] = 0.9 + 0.2 * MTRandom.nextDouble();
+				sumMu[tIndex] += mu[tIndex][wIndex];
+			}
+		}
+
+		System.out.println("Corpus size: " + numDocuments + " docs, "
+			+ numWordsInCorpus + " words");
+		System.out.println("Vocabuary size: " + vocabularySize);
+		System.out.println("Number of topics: " + numTopics);
+		System.out.println("alpha: " + alpha);
+		System.out.println("beta: " + beta);
+		System.out.println("Number of passes: " + numPasses);
+		System.out.println("Number of top topical words: " + topWords);
+	}
+
+	/**
+	 * A document as distinct word IDs with their counts
+	 */
+	private static class Document
+	{
+		final int[] words;
+		final int[] counts;
+		final int length;
+
+		Document(int[] inWords, int[] inCounts, int inLength)
+		{
+			words = inWords;
+			counts = inCounts;
+			length = inLength;
+		}
+	}
+
+	/**
+	 * Receives the mini-batches of a pass over the corpus
+	 */
+	private interface BatchHandler
+	{
+		public void batch(List<Document> batch)
+			throws Exception;
+	}
+
+	/**
+	 * Stream the corpus through the vocabulary and pass it on in mini-batches
+	 * of batchSize documents
+	 */
+	private void readBatches(final BatchHandler handler)
+		throws Exception
+	{
+		final List<List<Document>> batches = new ArrayList<List<Document>>(1);
+		batches.add(new ArrayList<Document>(batchSize));
+		vocabulary.readCorpus(corpusPath, new TermIndex.DocumentHandler()
+		{
+			@Override
+			public void document(int[] words, int length)
+				throws IOException
+			{
+				List<Document> batch = batches.get(0);
+				batch.add(toDocument(words, length));
+				if (batch.size() < batchSize)
+					return;
+				batches.set(0, new ArrayList<Document>(batchSize));
+				try {
+					handler.batch(batch);
+				}
+				catch (IOException e) {
+					throw e;
+				}
+				catch (Exception e) {
+					throw new IOException(e);
+				}
+			}
+		});
+		if (!batches.get(0).isEmpty())
+			handler.batch(batches.get(0));
+	}
+
+	private static Document toDocument(int[] words, int length)
+	{
+		int[] tokens = Arrays.copyOf(words, length);
+		Arrays.sort(tokens);
+
+		// Run-length encode the sorted word IDs
+		int numDistinct = 0;
+		int[] counts = new int[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			if ((numDistinct > 0) && (tokens[i] == tokens[numDistinct - 1])) {
+				counts[numDistinct - 1]++;
+				continue;
+			}
+			tokens[numDistinct] = tokens[i];
+			counts[numDistinct++] = 1;
+		}
+		return new Document(Arrays.copyOf(tokens, numDistinct), Arrays.copyOf(
+			counts, numDistinct), length);
+	}
+
+	/**
+	 * Variational parameters of one mini-batch
+	 */
+	private class BatchState
+	{
+		final List<Document> documents;
+		// Words of the batch and their column in the batch matrices
+		final int[] batchWords;
+		final int[] column;
+		// exp(E[log beta]) of the batch words
+		final double[][] expElogBeta;
+		// Sufficient statistics of every worker, numTopics * batch words
+		final double[][][] workerStats;
+		final double[][] gammas;
+		final double[] logLikelihoods;
+
+		BatchState(List<Document> inDocuments, int[] wordColumn, boolean stats)
+		{
+			documents = inDocuments;
+			column = wordColumn;
+			int numWords = 0;
+			int[] words = new int[64];
+			for (Document document : documents)
+				for (int word : document.words)
+					if (column[word] < 0) {
+						if (numWords == words.length)
+							words = Arrays.copyOf(words, 2 * numWords);
+						column[word] = numWords;
+						words[numWords++] = word;
+					}
+			batchWords = Arrays.copyOf(words, numWords);
+
+			expElogBeta = new double[numTopics][numWords];
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				double digammaSum = Dirichlet.digamma(lambdaScale
+					* sumMu[tIndex] + vocabularySize * lambdaShift);
+				for (int j = 0; j < numWords; j++)
+					expElogBeta[tIndex][j] = Math.exp(Dirichlet
+						.digamma(lambdaScale * mu[tIndex][batchWords[j]]
+							+ lambdaShift)
+						- digammaSum);
+			}
+			workerStats = stats ? new double[numThreads][][] : null;
+			gammas = new double[documents.size()][];
+			logLikelihoods = new double[documents.size()];
+		}
+
+		/**
+		 * Release the word columns for the next batch
+		 */
+		void clear()
+		{
+			for (int word : batchWords)
+				column[word] = -1;
+		}
+	}
+
+	/**
+	 * Fit the documents of the batch in parallel, each worker taking a
+	 * contiguous share
+	 */
+	private void fitBatch(final BatchState state)
+		throws Exception
+	{
+		if (pool == null) {
+			// Daemon threads, so that an unfinished run does not keep the JVM
+			// alive
+			pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			randoms = new MersenneTwister[numThreads];
+			for (int p = 0; p < numThreads; p++)
+				randoms[p] = new MersenneTwister(
+					MTRandom.nextInt(Integer.MAX_VALUE));
+		}
+
+		int numDocs = state.documents.size();
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int p = 0; p < numThreads; p++) {
+			final int worker = p;
+			final int start = (int) ((long) numDocs * p / numThreads);
+			final int end = (int) ((long) numDocs * (p + 1) / numThreads);
+			tasks.add(Executors.callable(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					double[][] stats = null;
+					if (state.workerStats != null) {
+						stats = new double[numTopics][state.batchWords.length];
+						state.workerStats[worker] = stats;
+					}
+					for (int d = start; d < end; d++)
+						fitDocument(state, d, stats, randoms[worker]);
+				}
+			}));
+		}
+		for (Future<Object> future : pool.invokeAll(tasks))
+			future.get();
+	}
+
+	/**
+	 * Coordinate ascent on the topic proportions gamma of one document; adds
+	 * its expected topic-word counts (without the expElogBeta factor) to
+	 * stats when not null
+	 */
+	private void fitDocument(BatchState state, int d, double[][] stats,
+		MersenneTwister random)
+	{
+		Document document = state.documents.get(d);
+		int numWords = document.words.length;
+		int[] columns = new int[numWords];
+		for (int i = 0; i < numWords; i++)
+			columns[i] = state.column[document.words[i]];
+		double[][] expElogBeta = state.expElogBeta;
+
+		double[] gamma = new double[numTopics];
+		double[] expElogTheta = new double[numTopics];
+		double[] phiNorm = new double[numWords];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			gamma[tIndex] = 0.9 + 0.2 * random.nextDouble();
+		expectedLogTheta(gamma, expElogTheta);
+		computePhiNorm(expElogTheta, expElogBeta, columns, phiNorm);
+
+		double[] lastGamma = new double[numTopics];
+		for (int iter = 0; iter < maxDocumentIterations; iter++) {
+			System.arraycopy(gamma, 0, lastGamma, 0, numTopics);
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				double[] row = expElogBeta[tIndex];
+				double dot = 0;
+				for (int i = 0; i < numWords; i++)
+					dot += document.counts[i] * row[columns[i]] / phiNorm[i];
+				gamma[tIndex] = alpha + expElogTheta[tIndex] * dot;
+			}
+			expectedLogTheta(gamma, expElogTheta);
+			computePhiNorm(expElogTheta, expElogBeta, columns, phiNorm);
+
+			double change = 0;
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				change += Math.abs(gamma[tIndex] - lastGamma[tIndex]);
+			if (change / numTopics < gammaThreshold)
+				break;
+		}
+
+		if (stats != null)
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				for (int i = 0; i < numWords; i++)
+					stats[tIndex][columns[i]] += expElogTheta[tIndex]
+						* document.counts[i] / phiNorm[i];
+
+		// Log-likelihood of the document under E[theta] and E[beta]
+		double gammaSum = 0;
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			gammaSum += gamma[tIndex];
+		double logLikelihood = 0;
+		for (int i = 0; i < numWords; i++) {
+			int word = document.words[i];
+			double likeWord = 0;
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				likeWord += gamma[tIndex] / gammaSum * expectedBeta(tIndex, word);
+			logLikelihood += document.counts[i] * Math.log(likeWord);
+		}
+		state.gammas[d] = gamma;
+		state.logLikelihoods[d] = logLikelihood;
+	}
+
+	private void expectedLogTheta(double[] gamma, double[] expElogTheta)
+	{
+		double gammaSum = 0;
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			gammaSum += gamma[tIndex];
+		double digammaSum = Dirichlet.digamma(gammaSum);
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			expElogTheta[tIndex] = Math.exp(Dirichlet.digamma(gamma[tIndex])
+				- digammaSum);
+	}
+
+	private void computePhiNorm(double[] expElogTheta,
+		double[][] expElogBeta, int[] columns, double[] phiNorm)
+	{
+		Arrays.fill(phiNorm, 1e-100);
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			double[] row = expElogBeta[tIndex];
+			double theta = expElogTheta[tIndex];
+			for (int i = 0; i < columns.length; i++)
+				phiNorm[i] += theta * row[columns[i]];
+		}
+	}
+
+	/**
+	 * E[beta[t][w]] = lambda[t][w] / sum_w lambda[t][w]
+	 */
+	public double expectedBeta(int tIndex, int wIndex)
+	{
+		return (lambdaScale * mu[tIndex][wIndex] + lambdaShift)
+			/ (lambdaScale * sumMu[tIndex] + vocabularySize * lambdaShift);
+	}
+
+	/**
+	 * Move lambda towards the estimate of the mini-batch
+	 */
+	private void updateLambda(BatchState state)
+	{
+		double rho = Math.pow(tau0 + numUpdates, -kappa);
+		numUpdates++;
+		double weight = rho * numDocuments / state.documents.size();
+
+		// (1 - rho) * lambda + rho * beta, applied to scale and shift
+		lambdaScale *= 1 - rho;
+		lambdaShift = (1 - rho) * lambdaShift + rho * beta;
+		if (lambdaScale < 1e-100) {
+			// Fold the scale into mu before it underflows (or reaches 0 when
+			// rho = 1)
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				sumMu[tIndex] = 0;
+				for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
+					mu[tIndex][wIndex] *= lambdaScale;
+					sumMu[tIndex] += mu[tIndex][wIndex];
+				}
+			}
+			lambdaScale = 1.0;
+		}
+
+		int numWords = state.batchWords.length;
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			double[] row = mu[tIndex];
+			double[] expElogBeta = state.expElogBeta[tIndex];
+			for (int j = 0; j < numWords; j++) {
+				double stat = 0;
+				for (double[][] stats : state.workerStats)
+					if (stats != null)
+						stat += stats[tIndex][j];
+				double delta = weight * stat * expElogBeta[j] / lambdaScale;
+				row[state.batchWords[j]] += delta;
+				sumMu[tIndex] += delta;
+			}
+		}
+	}
+
+	public void inference()
+		throws Exception
+	{
+		System.out.println("Running online variational Bayes inference: ");
+
+		final int[] column = new int[vocabularySize];
+		Arrays.fill(column, -1);
+		class Pass
+			implements BatchHandler
+		{
+			double logLikelihood = 0;
+			long numWords = 0;
+
+			@Override
+			public void batch(List<Document> batch)
+				throws Exception
+			{
+				BatchState state = new BatchState(batch, column, true);
+				fitBatch(state);
+				updateLambda(state);
+				state.clear();
+				for (int d = 0; d < batch.size(); d++) {
+					logLikelihood += state.logLikelihoods[d];
+					numWords += batch.get(d).length;
+				}
+				if ((numUpdates % 10) == 0)
+					System.out.println("\t\tMini-batch " + numUpdates
+						+ ", perplexity: " + Math.exp(-logLikelihood / numWords));
+			}
+		}
+		for (int pass = 1; pass <= numPasses; pass++) {
+			System.out.println("\tPass: " + pass);
+			Pass state = new Pass();
+			readBatches(state);
+			System.out.println("\t\tPerplexity of pass " + pass + ": "
+				+ Math.exp(-state.logLikelihood / state.numWords));
+		}
+
+		writeParameters();
+		System.out.println("Writing output ...");
+		write();
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		System.out.println("Inference completed!");
+	}
+
+	public void writeParameters()
+		throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".paras"));
+		writer.write("-model" + "\t" + "LDA");
+		writer.write("\n-engine" + "\t" + "onlinevb");
+		writer.write("\n-corpus" + "\t" + corpusPath);
+		writer.write("\n-ntopics" + "\t" + numTopics);
+		writer.write("\n-alpha" + "\t" + alpha);
+		writer.write("\n-beta" + "\t" + beta);
+		writer.write("\n-npasses" + "\t" + numPasses);
+		writer.write("\n-batchsize" + "\t" + batchSize);
+		writer.write("\n-twords" + "\t" + topWords);
+		writer.write("\n-name" + "\t" + expName);
+		writer.close();
+	}
+
+	public void writeTopTopicalWords()
+		throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".topWords"));
+
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			writer.write("Topic" + tIndex + ":");
+
+			Map<Integer, Double> wordPros = new TreeMap<Integer, Double>();
+			for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
+				wordPros.put(wIndex, mu[tIndex][wIndex]);
+			}
+			wordPros = FuncUtils.sortByValueDescending(wordPros);
+
+			Set<Integer> mostLikelyWords = wordPros.keySet();
+			int count = 0;
+			for (Integer index : mostLikelyWords) {
+				if (count < topWords) {
+					writer.write(" " + id2WordVocabulary.get(index));
+					count += 1;
+				}
+				else {
+					writer.write("\n\n");
+					break;
+				}
+			}
+		}
+		writer.close();
+	}
+
+	public void writeTopicWordPros()
+		throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".phi"));
+		for (int i = 0; i < numTopics; i++) {
+			for (int j = 0; j < vocabularySize; j++) {
+				writer.write(expectedBeta(i, j) + " ");
+			}
+			writer.write("\n");
+		}
+		writer.close();
+	}
+
+	/**
+	 * Infer the topic proportions of every document in a streaming pass and
+	 * write E[theta]
+	 */
+	public void writeDocTopicPros()
+		throws Exception
+	{
+		final BufferedWriter writer = binaryTheta ? null : new BufferedWriter(
+			new FileWriter(folderPath + expName + ".theta"));
+		final BinaryTheta binaryWriter = binaryTheta ? new BinaryTheta(folderPath
+			+ expName + BinaryTheta.SUFFIX, numDocuments, numTopics) : null;
+		final int[] column = new int[vocabularySize];
+		Arrays.fill(column, -1);
+		readBatches(new BatchHandler()
+		{
+			@Override
+			public void batch(List<Document> batch)
+				throws Exception
+			{
+				BatchState state = new BatchState(batch, column, false);
+				fitBatch(state);
+				state.clear();
+				for (double[] gamma : state.gammas) {
+					double gammaSum = 0;
+					for (int j = 0; j < numTopics; j++)
+						gammaSum += gamma[j];
+					if (binaryTheta) {
+						for (int j = 0; j < numTopics; j++)
+							binaryWriter.write(gamma[j] / gammaSum);
+						continue;
+					}
+					for (int j = 0; j < numTopics; j++)
+						writer.write(gamma[j] / gammaSum + " ");
+					writer.write("\n");
+				}
+			}
+		});
+		if (binaryTheta)
+			binaryWriter.close();
+		else
+			writer.close();
+	}
+
+	public void write()
+		throws Exception
+	{
+		writeTopTopicalWords();
+		writeDocTopicPros();
+		writeTopicWordPros();
+	}
+
+	public static void main(String args[])
+		throws Exception
+	{
+		if (args.length < 3) {
+			System.out.println("Usage: java models.OnlineVBLDA corpus numTopics numPasses [expName]");
+			return;
+		}
+		OnlineVBLDA lda = new OnlineVBLDA(args[0], Integer.parseInt(args[1]),
+			0.1, 0.01, Integer.parseInt(args[2]), 20, args.length > 3 ? args[3]
+				: "onlineLDA");
+		lda.inference();
+	}
+}
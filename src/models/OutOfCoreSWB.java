@@ -0,0 +1,705 @@
+package models;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import utility.BinaryCorpus;
+import utility.BinaryTheta;
+import utility.FuncUtils;
+import utility.MTRandom;
+import utility.MappedFile;
+
+/**
+ * Out-of-core SWB: collapsed Gibbs sampling for corpora that do not fit in
+ * memory.
+ *
+ * The corpus (see utility.BinaryCorpus) and the topic assignments stay on
+ * disk and are streamed sequentially on every sweep; the assignments of a
+ * document are written back in place after it is sampled. Only the global
+ * tables are held in memory: the word-topic counts (word-major, as used by
+ * TopicKernel), the topic totals and the background word counts. The
+ * per-document counts are rebuilt from the document's assignments when it is
+ * read, so a sweep samples the same chain as GibbsSamplingSWB with a kernel.
+ *
+ * The assignment file holds a header of magic "SWBA", version, bytes per
+ * assignment (2 when 3 * numTopics fits in 16 bits, else 4), number of
+ * topics and number of words (long), followed by one subtopic per token in
+ * corpus order. Given an assignment file (e.g. the <expName>.assignments
+ * of an earlier run), sampling continues from it; otherwise
+ * <expName>.assignments is overwritten with a fresh random initialization,
+ * so that a rerun with the same seed gives the same result.
+ *
+ * Usage: java models.OutOfCoreSWB corpus numTopics numIterations [expName]
+ * where corpus is a text corpus (converted once to corpus.bin and
+ * corpus.vocabulary) or a binary corpus ending in ".bin".
+ */
+public class OutOfCoreSWB
+{
+	static final int ASSIGNMENT_MAGIC = 0x53574241;
+	static final int ASSIGNMENT_VERSION = 1;
+	static final int ASSIGNMENT_HEADER_SIZE = 24;
+
+	public double alpha; // Hyper-parameter alpha
+	public double[] betas; // Hyper-parameters of the topic, special-word and background words
+	public double gamma; // Hyper-parameter of the route (topic, special-word or background)
+	public int numTopics;
+	public int numIterations;
+	public int topWords;
+
+	public double[] alphas;
+	public double alphaSum;
+	public double[] betaSum;
+
+	public int numDocuments;
+	public long numWordsInCorpus;
+	public int vocabularySize;
+	public String[] id2WordVocabulary;
+
+	// vocabularySize * numTopics matrix
+	public int[][] wordTopicCount;
+	public int[] sumTopicWordCount;
+	// Background count of every word
+	public int[] sumWordCount;
+
+	public double[] invTopicDenominators;
+	public TopicKernel kernel;
+	private double[] multiPros;
+	private double[] blockSums;
+
+	// State of the document being sampled, rebuilt from its assignments
+	private int[] words = new int[0];
+	private int[] subtopics = new int[0];
+	private final int[] docTopicCount;
+	private int Nd0, Nd1, Nd2;
+	private int sumDocWordCount;
+	// Special-word and background counts of the document's words; reset
+	// after every document
+	private final int[] docWordCount;
+	private final int[] docBackgroundCount;
+
+	private final BinaryCorpus corpus;
+	private final MappedFile assignments;
+	private final int assignmentWidth;
+
+	public String folderPath;
+	public String corpusPath;
+	public String assignmentPath;
+	public String expName;
+	// Write .theta.bin (see utility.BinaryTheta) instead of .theta
+	public boolean binaryTheta = false;
+	public int numChangedAssignments;
+
+	public OutOfCoreSWB(String pathToBinaryCorpus, String pathToVocabulary,
+		int inNumTopics, double inAlpha, double[] inBetas, double inGamma,
+		int inNumIterations, int inTopWords, String inExpName)
+		throws IOException
+	{
+		this(pathToBinaryCorpus, pathToVocabulary, inNumTopics, inAlpha,
+			inBetas, inGamma, inNumIterations, inTopWords, inExpName, "");
+	}
+
+	/**
+	 * Continue from the assignments of pathToAssignmentFile, which is copied
+	 * to <expName>.assignments unless it is that file, or start afresh if
+	 * it is empty
+	 */
+	public OutOfCoreSWB(String pathToBinaryCorpus, String pathToVocabulary,
+		int inNumTopics, double inAlpha, double[] inBetas, double inGamma,
+		int inNumIterations, int inTopWords, String inExpName,
+		String pathToAssignmentFile)
+		throws IOException
+	{
+		alpha = inAlpha;
+		betas = inBetas.clone();
+		gamma = inGamma;
+		numTopics = inNumTopics;
+		numIterations = inNumIterations;
+		topWords = inTopWords;
+		expName = inExpName;
+		corpusPath = pathToBinaryCorpus;
+		folderPath = pathToBinaryCorpus.substring(
+			0,
+			Math.max(pathToBinaryCorpus.lastIndexOf("/"),
+				pathToBinaryCorpus.lastIndexOf("\\")) + 1);
+
+		System.out.println("Opening out-of-core (SWB) corpus: "
+			+ pathToBinaryCorpus);
+		corpus = new BinaryCorpus(pathToBinaryCorpus);
+		numDocuments = corpus.numDocuments;
+		numWordsInCorpus = corpus.numWords;
+		vocabularySize = corpus.vocabularySize;
+		id2WordVocabulary = BinaryCorpus.readVocabulary(pathToVocabulary,
+			vocabularySize);
+
+		wordTopicCount = new int[vocabularySize][numTopics];
+		sumTopicWordCount = new int[numTopics];
+		sumWordCount = new int[vocabularySize];
+		docTopicCount = new int[numTopics];
+		docWordCount = new int[vocabularySize];
+		docBackgroundCount = new int[vocabularySize];
+
+		multiPros = new double[numTopics * 3];
+		alphas = new double[numTopics];
+		Arrays.fill(alphas, alpha);
+		alphaSum = numTopics * alpha;
+		betaSum = new double[3];
+		for (int i = 0; i < 3; i++)
+			betaSum[i] = betas[i] * vocabularySize;
+		kernel = TopicKernel.create();
+		blockSums = new double[kernel.numBlocks(numTopics)];
+
+		System.out.println("Corpus size: " + numDocuments + " docs, "
+			+ numWordsInCorpus + " words");
+		System.out.println("Vocabuary size: " + vocabularySize);
+		System.out.println("Number of topics: " + numTopics);
+		System.out.println("alpha: " + alpha);
+		for (int i = 0; i < 3; i++)
+			System.out.println("beta: " + betas[i]);
+		System.out.println("Number of sampling iterations: " + numIterations);
+
+		assignmentWidth = 3 * numTopics <= 65536 ? 2 : 4;
+		assignmentPath = folderPath + expName + ".assignments";
+		long assignmentSize = ASSIGNMENT_HEADER_SIZE + assignmentWidth
+			* numWordsInCorpus;
+		File assignmentFile = new File(assignmentPath);
+		boolean resume = pathToAssignmentFile.length() > 0;
+		if (resume) {
+			File source = new File(pathToAssignmentFile);
+			if (!source.isFile())
+				throw new IOException("No topic-assignment file "
+					+ pathToAssignmentFile);
+			if (!source.getCanonicalFile().equals(
+				assignmentFile.getCanonicalFile()))
+				Files.copy(source.toPath(), assignmentFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			if (assignmentFile.length() != assignmentSize)
+				throw new IOException(
+					"The topic modeling corpus and topic assignment file are not consistent");
+		}
+		assignments = new MappedFile(assignmentPath, true, assignmentSize,
+			64L << 20);
+		if (resume)
+			initializeFromAssignments();
+		else
+			initialize();
+	}
+
+	/**
+	 * Randomly initialize the assignment file and the global counts
+	 */
+	public void initialize()
+		throws IOException
+	{
+		System.out.println("Randomly initializing topic assignments ...");
+		ByteBuffer header = assignments.window(0, ASSIGNMENT_HEADER_SIZE);
+		header.putInt(ASSIGNMENT_MAGIC);
+		header.putInt(ASSIGNMENT_VERSION);
+		header.putInt(assignmentWidth);
+		header.putInt(numTopics);
+		header.putLong(numWordsInCorpus);
+
+		Arrays.fill(multiPros, 1.0 / numTopics);
+		corpus.rewind();
+		long position = ASSIGNMENT_HEADER_SIZE;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			int docSize = readDocument(position);
+			for (int wIndex = 0; wIndex < docSize; wIndex++) {
+				subtopics[wIndex] = FuncUtils.nextDiscrete(multiPros);
+				addGlobal(words[wIndex], subtopics[wIndex], 1);
+			}
+			writeAssignments(position, docSize);
+			position += (long) assignmentWidth * docSize;
+		}
+		assignments.flush();
+	}
+
+	/**
+	 * Rebuild the global counts from an existing assignment file, e.g. to
+	 * continue an earlier run
+	 */
+	public void initializeFromAssignments()
+		throws IOException
+	{
+		System.out.println("Reading topic-assignment file: " + assignmentPath);
+		ByteBuffer header = assignments.window(0, ASSIGNMENT_HEADER_SIZE);
+		if ((header.getInt() != ASSIGNMENT_MAGIC)
+			|| (header.getInt() != ASSIGNMENT_VERSION)
+			|| (header.getInt() != assignmentWidth)
+			|| (header.getInt() != numTopics)
+			|| (header.getLong() != numWordsInCorpus))
+			throw new IOException(
+				"The topic modeling corpus and topic assignment file are not consistent");
+
+		corpus.rewind();
+		long position = ASSIGNMENT_HEADER_SIZE;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			int docSize = readDocument(position);
+			for (int wIndex = 0; wIndex < docSize; wIndex++) {
+				if ((subtopics[wIndex] < 0)
+					|| (subtopics[wIndex] >= 3 * numTopics))
+					throw new IOException("Illegal topic assignment "
+						+ subtopics[wIndex] + " in document " + dIndex);
+				addGlobal(words[wIndex], subtopics[wIndex], 1);
+			}
+			position += (long) assignmentWidth * docSize;
+		}
+	}
+
+	/**
+	 * Read the next document and its assignments at the given position of
+	 * the assignment file
+	 */
+	private int readDocument(long position)
+		throws IOException
+	{
+		int docSize = corpus.nextLength();
+		if (docSize > words.length) {
+			words = new int[Math.max(docSize, 2 * words.length)];
+			subtopics = new int[words.length];
+		}
+		corpus.read(words, docSize);
+		ByteBuffer buffer = assignments.window(position, assignmentWidth
+			* docSize);
+		if (assignmentWidth == 2)
+			for (int wIndex = 0; wIndex < docSize; wIndex++)
+				subtopics[wIndex] = buffer.getChar();
+		else
+			buffer.asIntBuffer().get(subtopics, 0, docSize);
+		return docSize;
+	}
+
+	private void writeAssignments(long position, int docSize)
+		throws IOException
+	{
+		ByteBuffer buffer = assignments.window(position, assignmentWidth
+			* docSize);
+		if (assignmentWidth == 2)
+			for (int wIndex = 0; wIndex < docSize; wIndex++)
+				buffer.putChar((char) subtopics[wIndex]);
+		else
+			buffer.asIntBuffer().put(subtopics, 0, docSize);
+	}
+
+	private void addGlobal(int word, int subtopic, int delta)
+	{
+		int route = subtopic / numTopics;
+		if (route == 0) {
+			int topic = subtopic % numTopics;
+			wordTopicCount[word][topic] += delta;
+			sumTopicWordCount[topic] += delta;
+		}
+		else if (route == 2)
+			sumWordCount[word] += delta;
+	}
+
+	/**
+	 * Rebuild the counts of the document just read from its assignments
+	 */
+	private void loadDocument(int docSize)
+	{
+		Arrays.fill(docTopicCount, 0);
+		Nd0 = Nd1 = Nd2 = 0;
+		for (int wIndex = 0; wIndex < docSize; wIndex++) {
+			int subtopic = subtopics[wIndex];
+			int route = subtopic / numTopics;
+			docTopicCount[subtopic % numTopics]++;
+			if (route == 0)
+				Nd0++;
+			else if (route == 1) {
+				Nd1++;
+				docWordCount[words[wIndex]]++;
+			}
+			else {
+				Nd2++;
+				docBackgroundCount[words[wIndex]]++;
+			}
+		}
+		sumDocWordCount = Nd1;
+	}
+
+	private void clearDocument(int docSize)
+	{
+		for (int wIndex = 0; wIndex < docSize; wIndex++) {
+			docWordCount[words[wIndex]] = 0;
+			docBackgroundCount[words[wIndex]] = 0;
+		}
+	}
+
+	public void inference()
+		throws IOException
+	{
+		System.out.println("Running out-of-core Gibbs sampling inference: ");
+		for (int iter = 1; iter <= numIterations; iter++) {
+			sampleInSingleIteration();
+			if (iter % 10 == 0)
+				System.out.println("\tIteration " + iter + ": "
+					+ numChangedAssignments + " assignments changed");
+		}
+
+		writeParameters();
+		System.out.println("Writing output from the last sample ...");
+		write();
+		System.out.println("Sampling completed!");
+	}
+
+	/**
+	 * One sweep: stream every document and its assignments, resample it and
+	 * write its assignments back
+	 */
+	public void sampleInSingleIteration()
+		throws IOException
+	{
+		numChangedAssignments = 0;
+		if (invTopicDenominators == null)
+			invTopicDenominators = new double[numTopics];
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			invTopicDenominators[tIndex] = 1.0 / (sumTopicWordCount[tIndex] + betaSum[0]);
+
+		corpus.rewind();
+		long position = ASSIGNMENT_HEADER_SIZE;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			int docSize = readDocument(position);
+			loadDocument(docSize);
+			sampleDocument(docSize);
+			clearDocument(docSize);
+			writeAssignments(position, docSize);
+			position += (long) assignmentWidth * docSize;
+		}
+		assignments.flush();
+	}
+
+	/**
+	 * Resample every token of the document just loaded, as in
+	 * GibbsSamplingSWB
+	 */
+	private void sampleDocument(int docSize)
+	{
+		double invRouteDenominator = 1.0 / (docSize - 1 + 3 * gamma);
+		double invDocTopicDenominator = 1.0 / (docSize - 1 + alphaSum);
+		double invSpecialDenominator = 0, invBackgroundDenominator = 0;
+		int cachedSumDocWordCount = -1;
+
+		for (int wIndex = 0; wIndex < docSize; wIndex++) {
+			int word = words[wIndex];
+			int subtopic = subtopics[wIndex];
+			int topic = subtopic % numTopics;
+			int route = subtopic / numTopics;
+
+			// Decrease counts
+			docTopicCount[topic]--;
+			if (route == 0) {
+				Nd0--;
+				wordTopicCount[word][topic]--;
+				sumTopicWordCount[topic]--;
+				invTopicDenominators[topic] = 1.0 / (sumTopicWordCount[topic] + betaSum[0]);
+			}
+			else if (route == 1) {
+				Nd1--;
+				docWordCount[word]--;
+				sumDocWordCount--;
+			}
+			else {
+				Nd2--;
+				docBackgroundCount[word]--;
+				sumWordCount[word]--;
+			}
+			if (sumDocWordCount != cachedSumDocWordCount) {
+				cachedSumDocWordCount = sumDocWordCount;
+				invSpecialDenominator = 1.0 / (cachedSumDocWordCount + betaSum[1]);
+				invBackgroundDenominator = 1.0 / (cachedSumDocWordCount + betaSum[2]);
+			}
+
+			// Sample a topic and route
+			double topicFactor = (Nd0 + gamma) * invRouteDenominator
+				* invDocTopicDenominator;
+			double topicSum = kernel.fill(numTopics, docTopicCount, alphas,
+				wordTopicCount[word], betas[0], invTopicDenominators,
+				topicFactor, multiPros, blockSums);
+			double specialPro = (Nd1 + gamma) * invRouteDenominator
+				* (docWordCount[word] + betas[1]) * invSpecialDenominator;
+			double backgroundPro = (Nd2 + gamma) * invRouteDenominator
+				* (docBackgroundCount[word] + betas[2]) * invBackgroundDenominator;
+			double sum = topicSum + numTopics * (specialPro + backgroundPro);
+
+			int oldSubtopic = subtopic;
+			double r = MTRandom.nextDouble() * sum;
+			if (r < topicSum) {
+				subtopic = FuncUtils.findInBlocks(multiPros, blockSums,
+					kernel.blockSize(), numTopics, r);
+			}
+			else if ((r -= topicSum) < numTopics * specialPro) {
+				subtopic = numTopics + Math.min(numTopics - 1, (int) (r / specialPro));
+			}
+			else {
+				r -= numTopics * specialPro;
+				subtopic = numTopics * 2 + Math.min(numTopics - 1, (int) (r / backgroundPro));
+			}
+			topic = subtopic % numTopics;
+			route = subtopic / numTopics;
+			if (subtopic != oldSubtopic)
+				numChangedAssignments++;
+
+			// Increase counts
+			docTopicCount[topic]++;
+			if (route == 0) {
+				Nd0++;
+				wordTopicCount[word][topic]++;
+				sumTopicWordCount[topic]++;
+				invTopicDenominators[topic] = 1.0 / (sumTopicWordCount[topic] + betaSum[0]);
+			}
+			else if (route == 1) {
+				Nd1++;
+				docWordCount[word]++;
+				sumDocWordCount++;
+			}
+			else {
+				Nd2++;
+				docBackgroundCount[word]++;
+				sumWordCount[word]++;
+			}
+			subtopics[wIndex] = subtopic;
+		}
+	}
+
+	public void writeParameters()
+		throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".paras"));
+		writer.write("-model" + "\t" + "SWB");
+		writer.write("\n-engine" + "\t" + "outofcore");
+		writer.write("\n-corpus" + "\t" + corpusPath);
+		writer.write("\n-ntopics" + "\t" + numTopics);
+		writer.write("\n-alpha" + "\t" + alpha);
+		writer.write("\n-beta" + "\t" + "[" + betas[0] + "," + betas[1] + ","
+			+ betas[2] + "]");
+		writer.write("\n-gamma" + "\t" + gamma);
+		writer.write("\n-niters" + "\t" + numIterations);
+		writer.write("\n-twords" + "\t" + topWords);
+		writer.write("\n-name" + "\t" + expName);
+		writer.write("\n-initFile" + "\t" + assignmentPath);
+		writer.close();
+	}
+
+	public void writeTopTopicalWords()
+		throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".topWords"));
+		for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+			writer.write("Topic" + tIndex + ":");
+
+			Map<Integer, Double> topicWordProbs = new TreeMap<Integer, Double>();
+			for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
+				double prob = (wordTopicCount[wIndex][tIndex] + betas[0])
+					/ (sumTopicWordCount[tIndex] + betaSum[0]);
+				topicWordProbs.put(wIndex, prob);
+			}
+			topicWordProbs = FuncUtils.sortByValueDescending(topicWordProbs);
+
+			Set<Integer> mostLikelyWords = topicWordProbs.keySet();
+			int count = 0;
+			for (Integer index : mostLikelyWords) {
+				if (count < topWords) {
+					writer.write(" " + id2WordVocabulary[index]);
+					count += 1;
+				}
+				else {
+					writer.write("\n\n");
+					break;
+				}
+			}
+		}
+		writer.close();
+	}
+
+	public void writeTopicWordPros()
+		throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".phi"));
+		for (int i = 0; i < numTopics; i++) {
+			for (int j = 0; j < vocabularySize; j++) {
+				double pro = (wordTopicCount[j][i] + betas[0])
+					/ (sumTopicWordCount[i] + betaSum[0]);
+				writer.write(pro + " ");
+			}
+			writer.write("\n");
+		}
+		writer.close();
+	}
+
+	/**
+	 * Write the corpus-wide background distribution, most probable words
+	 * first, as GibbsSamplingSWB does
+	 */
+	public void writeBackgroundWordPros()
+		throws IOException
+	{
+		long sumBackground = 0;
+		int numEntries = 0;
+		long[] entries = new long[vocabularySize];
+		for (int wIndex = 0; wIndex < vocabularySize; wIndex++) {
+			sumBackground += sumWordCount[wIndex];
+			if (sumWordCount[wIndex] > 0)
+				entries[numEntries++] = ((long) sumWordCount[wIndex] << 32)
+					| wIndex;
+		}
+		Arrays.sort(entries, 0, numEntries);
+
+		double norm = sumBackground + betaSum[2];
+		BufferedWriter writer = new BufferedWriter(new FileWriter(folderPath
+			+ expName + ".background"));
+		for (int i = numEntries - 1; i >= 0; i--) {
+			double pro = ((entries[i] >>> 32) + betas[2]) / norm;
+			writer.write(id2WordVocabulary[(int) entries[i]] + " " + pro
+				+ "\n");
+		}
+		writer.close();
+	}
+
+	/**
+	 * Write the document-topic distributions and the most probable special
+	 * words of every document in one more pass over the corpus
+	 */
+	public void writeDocumentOutputs()
+		throws IOException
+	{
+		BufferedWriter thetaWriter = binaryTheta ? null : new BufferedWriter(
+			new FileWriter(folderPath + expName + ".theta"));
+		BinaryTheta binaryWriter = binaryTheta ? new BinaryTheta(folderPath
+			+ expName + BinaryTheta.SUFFIX, numDocuments, numTopics) : null;
+		BufferedWriter specialWriter = new BufferedWriter(new FileWriter(
+			folderPath + expName + ".specialWords"));
+		long[] entries = new long[0];
+		corpus.rewind();
+		long position = ASSIGNMENT_HEADER_SIZE;
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			int docSize = readDocument(position);
+			loadDocument(docSize);
+			position += (long) assignmentWidth * docSize;
+
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				double pro = (docTopicCount[tIndex] + alphas[tIndex])
+					/ (docSize + alphaSum);
+				if (binaryTheta)
+					binaryWriter.write(pro);
+				else
+					thetaWriter.write(pro + " ");
+			}
+			if (!binaryTheta)
+				thetaWriter.write("\n");
+
+			// Pack (count, word) into a long so ranking is a primitive sort;
+			// a word's count is cleared once taken so each word appears once
+			if (entries.length < docSize)
+				entries = new long[words.length];
+			int numEntries = 0;
+			for (int wIndex = 0; wIndex < docSize; wIndex++) {
+				int word = words[wIndex];
+				if (docWordCount[word] > 0) {
+					entries[numEntries++] = ((long) docWordCount[word] << 32)
+						| word;
+					docWordCount[word] = 0;
+				}
+			}
+			Arrays.sort(entries, 0, numEntries);
+			double norm = sumDocWordCount + betaSum[1];
+			StringBuilder line = new StringBuilder();
+			line.append("Doc").append(dIndex).append(":");
+			for (int i = numEntries - 1; i >= Math.max(0, numEntries
+				- topWords); i--) {
+				double pro = ((entries[i] >>> 32) + betas[1]) / norm;
+				line.append(" ").append(id2WordVocabulary[(int) entries[i]])
+					.append(":").append(pro);
+			}
+			specialWriter.write(line.toString());
+			specialWriter.write("\n");
+
+			clearDocument(docSize);
+		}
+		if (binaryTheta)
+			binaryWriter.close();
+		else
+			thetaWriter.close();
+		specialWriter.close();
+	}
+
+	public void write()
+		throws IOException
+	{
+		writeTopTopicalWords();
+		writeTopicWordPros();
+		writeBackgroundWordPros();
+		writeDocumentOutputs();
+	}
+
+	public void close()
+		throws IOException
+	{
+		corpus.close();
+		assignments.close();
+	}
+
+	/**
+	 * Open a text corpus, converting it once to pathToCorpus.bin and
+	 * pathToCorpus.vocabulary, or a binary corpus ending in ".bin"
+	 */
+	public static OutOfCoreSWB open(String pathToCorpus, int inNumTopics,
+		double inAlpha, double[] inBetas, double inGamma, int inNumIterations,
+		int inTopWords, String inExpName)
+		throws IOException
+	{
+		return open(pathToCorpus, inNumTopics, inAlpha, inBetas, inGamma,
+			inNumIterations, inTopWords, inExpName, "");
+	}
+
+	/**
+	 * As above, continuing from pathToAssignmentFile unless it is empty
+	 */
+	public static OutOfCoreSWB open(String pathToCorpus, int inNumTopics,
+		double inAlpha, double[] inBetas, double inGamma, int inNumIterations,
+		int inTopWords, String inExpName, String pathToAssignmentFile)
+		throws IOException
+	{
+		String pathToBinary = pathToCorpus;
+		String base = pathToCorpus;
+		if (pathToCorpus.endsWith(".bin"))
+			base = pathToCorpus.substring(0, pathToCorpus.length() - 4);
+		else
+			pathToBinary = pathToCorpus + ".bin";
+		String pathToVocabulary = base + ".vocabulary";
+		if (!new File(pathToBinary).exists()) {
+			System.out.println("Converting " + pathToCorpus + " to "
+				+ pathToBinary);
+			BinaryCorpus.convert(pathToCorpus, pathToBinary, pathToVocabulary);
+		}
+		return new OutOfCoreSWB(pathToBinary, pathToVocabulary, inNumTopics,
+			inAlpha, inBetas, inGamma, inNumIterations, inTopWords, inExpName,
+			pathToAssignmentFile);
+	}
+
+	public static void main(String args[])
+		throws Exception
+	{
+		if (args.length < 3) {
+			System.out.println("Usage: java models.OutOfCoreSWB corpus numTopics numIterations [expName]");
+			return;
+		}
+		double[] betas = { 0.01, 0.01, 0.0001 };
+		OutOfCoreSWB swb = open(args[0], Integer.parseInt(args[1]), 0.1, betas,
+			0.3, Integer.parseInt(args[2]), 100, args.length > 3 ? args[3]
+				: "outOfCoreSWB");
+		swb.inference();
+		swb.close();
+	}
+}
@@ -0,0 +1,253 @@
+package models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parameter-server stand-in for distributed training (see DistributedWorker).
+ *
+ * The server holds the global topic-word counts, the topic totals and, for
+ * SWB, the background word counts. Workers push sparse count deltas tagged
+ * with their clock (the number of sweeps they have finished) and pull the
+ * rows of the words in their shard. A pull with minimum clock c blocks until
+ * every worker has pushed clock c, which bounds the staleness of what the
+ * workers read (stale synchronous parallel).
+ *
+ * Usage: java models.ParameterServer port numWorkers
+ */
+public class ParameterServer
+{
+	// Message types sent by the workers
+	static final byte REGISTER = 1;
+	static final byte PUSH = 2;
+	static final byte PULL = 3;
+	static final byte DONE = 4;
+
+	private final int numWorkers;
+	private int numTopics = -1;
+	private int vocabularySize;
+	private boolean background;
+
+	// vocabularySize * numTopics matrix
+	private int[][] wordTopicCount;
+	private int[] sumTopicWordCount;
+	// SWB background count of every word
+	private int[] backgroundCount;
+	// Last clock pushed by every worker (-1 before its first push)
+	private final int[] clocks;
+
+	public ParameterServer(int inNumWorkers)
+	{
+		numWorkers = inNumWorkers;
+		clocks = new int[numWorkers];
+		Arrays.fill(clocks, -1);
+	}
+
+	/**
+	 * Accept numWorkers connections on the given port and serve them until
+	 * all are done
+	 */
+	public void serve(int port)
+		throws IOException, InterruptedException
+	{
+		ServerSocket serverSocket = new ServerSocket(port);
+		System.out.println("Parameter server listening on port "
+			+ serverSocket.getLocalPort() + " for " + numWorkers + " workers");
+		List<Thread> handlers = new ArrayList<Thread>();
+		try {
+			for (int i = 0; i < numWorkers; i++) {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Thread handler = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						handle(socket);
+					}
+				});
+				handler.start();
+				handlers.add(handler);
+			}
+		}
+		finally {
+			serverSocket.close();
+		}
+		for (Thread handler : handlers)
+			handler.join();
+		System.out.println("All workers done");
+	}
+
+	private void handle(Socket socket)
+	{
+		int workerId = -1;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+				socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+			int[] words = null;
+			for (boolean done = false; !done;) {
+				byte type = in.readByte();
+				switch (type) {
+				case REGISTER:
+					workerId = in.readInt();
+					int inNumTopics = in.readInt();
+					int inVocabularySize = in.readInt();
+					boolean inBackground = in.readBoolean();
+					words = new int[in.readInt()];
+					for (int i = 0; i < words.length; i++)
+						words[i] = in.readInt();
+					register(workerId, inNumTopics, inVocabularySize,
+						inBackground);
+					out.writeInt(numWorkers);
+					out.flush();
+					break;
+				case PUSH:
+					int clock = in.readInt();
+					int[] topicDeltas = new int[3 * in.readInt()];
+					for (int i = 0; i < topicDeltas.length; i++)
+						topicDeltas[i] = in.readInt();
+					int[] backgroundDeltas = new int[2 * in.readInt()];
+					for (int i = 0; i < backgroundDeltas.length; i++)
+						backgroundDeltas[i] = in.readInt();
+					push(workerId, clock, topicDeltas, backgroundDeltas);
+					break;
+				case PULL:
+					int minClock = in.readInt();
+					boolean allWords = in.readBoolean();
+					byte[] rows = pull(minClock, allWords ? null : words);
+					out.write(rows);
+					out.flush();
+					break;
+				case DONE:
+					done = true;
+					break;
+				default:
+					throw new IOException("Unknown message type " + type);
+				}
+			}
+			socket.close();
+		}
+		catch (EOFException e) {
+			System.out.println("Worker " + workerId + " disconnected");
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			// A finished (or failed) worker no longer holds the others back
+			if (workerId >= 0)
+				finish(workerId);
+		}
+	}
+
+	private synchronized void register(int workerId, int inNumTopics,
+		int inVocabularySize, boolean inBackground)
+		throws IOException
+	{
+		if ((workerId < 0) || (workerId >= numWorkers))
+			throw new IOException("Illegal worker id " + workerId);
+		if (numTopics < 0) {
+			numTopics = inNumTopics;
+			vocabularySize = inVocabularySize;
+			background = inBackground;
+			wordTopicCount = new int[vocabularySize][numTopics];
+			sumTopicWordCount = new int[numTopics];
+			backgroundCount = new int[background ? vocabularySize : 0];
+		}
+		else if ((inNumTopics != numTopics)
+			|| (inVocabularySize != vocabularySize)
+			|| (inBackground != background))
+			throw new IOException("Worker " + workerId
+				+ " does not match the model: " + inNumTopics + " topics, "
+				+ inVocabularySize + " words");
+		System.out.println("Worker " + workerId + " registered");
+	}
+
+	private synchronized void push(int workerId, int clock,
+		int[] topicDeltas, int[] backgroundDeltas)
+	{
+		for (int i = 0; i < topicDeltas.length; i += 3) {
+			int topic = topicDeltas[i];
+			wordTopicCount[topicDeltas[i + 1]][topic] += topicDeltas[i + 2];
+			sumTopicWordCount[topic] += topicDeltas[i + 2];
+		}
+		for (int i = 0; i < backgroundDeltas.length; i += 2)
+			backgroundCount[backgroundDeltas[i]] += backgroundDeltas[i + 1];
+		clocks[workerId] = clock;
+		notifyAll();
+	}
+
+	private synchronized void finish(int workerId)
+	{
+		clocks[workerId] = Integer.MAX_VALUE;
+		notifyAll();
+	}
+
+	/**
+	 * Wait until every worker has pushed minClock, then encode the rows of
+	 * the given words (all words if null): per word, the number of non-zero
+	 * topics followed by (topic, count) pairs and, for SWB, the background
+	 * count; then the topic totals.
+	 */
+	private synchronized byte[] pull(int minClock, int[] words)
+		throws IOException, InterruptedException
+	{
+		while (minClock() < minClock)
+			wait();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		int numWords = words == null ? vocabularySize : words.length;
+		for (int i = 0; i < numWords; i++) {
+			int word = words == null ? i : words[i];
+			int[] row = wordTopicCount[word];
+			int nonZeros = 0;
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				if (row[tIndex] != 0)
+					nonZeros++;
+			out.writeInt(nonZeros);
+			for (int tIndex = 0; tIndex < numTopics; tIndex++)
+				if (row[tIndex] != 0) {
+					out.writeInt(tIndex);
+					out.writeInt(row[tIndex]);
+				}
+			if (background)
+				out.writeInt(backgroundCount[word]);
+		}
+		for (int tIndex = 0; tIndex < numTopics; tIndex++)
+			out.writeInt(sumTopicWordCount[tIndex]);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private int minClock()
+	{
+		int min = Integer.MAX_VALUE;
+		for (int clock : clocks)
+			min = Math.min(min, clock);
+		return min;
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		if (args.length < 2) {
+			System.out.println("Usage: java models.ParameterServer port numWorkers");
+			return;
+		}
+		new ParameterServer(Integer.parseInt(args[1])).serve(Integer
+			.parseInt(args[0]));
+	}
+}
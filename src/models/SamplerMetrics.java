@@ -0,0 +1,203 @@
+package models;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-iteration instrumentation for the Gibbs samplers.
+ *
+ * The samplers time each phase of an iteration (sampling, perplexity, output)
+ * and hand the numbers to {@link #record}, which appends one line to a CSV or
+ * JSON-lines file (chosen by the ".json"/".jsonl" suffix of the path) and
+ * publishes the values through the {@link SamplerMetricsMBean} interface.
+ * Recording costs a few arithmetic operations and one buffered line per
+ * iteration.
+ */
+
+public class SamplerMetrics
+	implements SamplerMetricsMBean
+{
+	private BufferedWriter writer;
+	private boolean json;
+	private ObjectName objectName;
+
+	private volatile int iteration;
+	private volatile double tokensPerSecond;
+	private volatile double iterationMillis;
+	private volatile double samplingMillis;
+	private volatile double perplexityMillis;
+	private volatile double ioMillis;
+	private volatile double changedShare;
+	private volatile double topicShare;
+	private volatile double specialWordShare;
+	private volatile double backgroundShare;
+	private volatile long heapUsedBytes;
+
+	/**
+	 * Metrics published through JMX only
+	 */
+	public SamplerMetrics()
+	{
+	}
+
+	/**
+	 * Metrics published through JMX and appended to the given file
+	 */
+	public SamplerMetrics(String pathToMetricsFile)
+		throws IOException
+	{
+		json = pathToMetricsFile.endsWith(".json")
+			|| pathToMetricsFile.endsWith(".jsonl");
+		writer = new BufferedWriter(new FileWriter(pathToMetricsFile));
+		if (!json) {
+			writer.write("iteration,tokensPerSecond,iterationMillis,samplingMillis,"
+				+ "perplexityMillis,ioMillis,changedShare,topicShare,"
+				+ "specialWordShare,backgroundShare,heapUsedBytes\n");
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Register this object with the platform MBean server under
+	 * "models:type=SamplerMetrics,name=<name>"
+	 */
+	public void register(String name)
+		throws Exception
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		objectName = new ObjectName("models:type=SamplerMetrics,name=" + name);
+		if (server.isRegistered(objectName))
+			server.unregisterMBean(objectName);
+		server.registerMBean(this, objectName);
+	}
+
+	/**
+	 * Record one iteration. Route counts are the number of tokens currently
+	 * assigned to latent topics, special words and background; LDA passes
+	 * all tokens as topic tokens.
+	 */
+	public void record(int iter, int numTokens, long samplingNanos,
+		long perplexityNanos, long ioNanos, int numChanged, long topicTokens,
+		long specialWordTokens, long backgroundTokens)
+		throws IOException
+	{
+		long iterationNanos = samplingNanos + perplexityNanos + ioNanos;
+		Runtime runtime = Runtime.getRuntime();
+
+		iteration = iter;
+		tokensPerSecond = samplingNanos > 0 ? numTokens * 1e9 / samplingNanos
+			: 0.0;
+		iterationMillis = iterationNanos / 1e6;
+		samplingMillis = samplingNanos / 1e6;
+		perplexityMillis = perplexityNanos / 1e6;
+		ioMillis = ioNanos / 1e6;
+		changedShare = numTokens > 0 ? numChanged * 1.0 / numTokens : 0.0;
+		double total = topicTokens + specialWordTokens + backgroundTokens;
+		topicShare = total > 0 ? topicTokens / total : 0.0;
+		specialWordShare = total > 0 ? specialWordTokens / total : 0.0;
+		backgroundShare = total > 0 ? backgroundTokens / total : 0.0;
+		heapUsedBytes = runtime.totalMemory() - runtime.freeMemory();
+
+		if (writer == null)
+			return;
+		if (json) {
+			writer.write("{\"iteration\":" + iteration + ",\"tokensPerSecond\":"
+				+ tokensPerSecond + ",\"iterationMillis\":" + iterationMillis
+				+ ",\"samplingMillis\":" + samplingMillis
+				+ ",\"perplexityMillis\":" + perplexityMillis + ",\"ioMillis\":"
+				+ ioMillis + ",\"changedShare\":" + changedShare
+				+ ",\"topicShare\":" + topicShare + ",\"specialWordShare\":"
+				+ specialWordShare + ",\"backgroundShare\":" + backgroundShare
+				+ ",\"heapUsedBytes\":" + heapUsedBytes + "}\n");
+		}
+		else {
+			writer.write(iteration + "," + tokensPerSecond + ","
+				+ iterationMillis + "," + samplingMillis + ","
+				+ perplexityMillis + "," + ioMillis + "," + changedShare + ","
+				+ topicShare + "," + specialWordShare + "," + backgroundShare
+				+ "," + heapUsedBytes + "\n");
+		}
+		writer.flush();
+	}
+
+	public void close()
+		throws Exception
+	{
+		if (writer != null)
+			writer.close();
+		if (objectName != null)
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+				objectName);
+	}
+
+	@Override
+	public int getIteration()
+	{
+		return iteration;
+	}
+
+	@Override
+	public double getTokensPerSecond()
+	{
+		return tokensPerSecond;
+	}
+
+	@Override
+	public double getIterationMillis()
+	{
+		return iterationMillis;
+	}
+
+	@Override
+	public double getSamplingMillis()
+	{
+		return samplingMillis;
+	}
+
+	@Override
+	public double getPerplexityMillis()
+	{
+		return perplexityMillis;
+	}
+
+	@Override
+	public double getIoMillis()
+	{
+		return ioMillis;
+	}
+
+	@Override
+	public double getChangedShare()
+	{
+		return changedShare;
+	}
+
+	@Override
+	public double getTopicShare()
+	{
+		return topicShare;
+	}
+
+	@Override
+	public double getSpecialWordShare()
+	{
+		return specialWordShare;
+	}
+
+	@Override
+	public double getBackgroundShare()
+	{
+		return backgroundShare;
+	}
+
+	@Override
+	public long getHeapUsedBytes()
+	{
+		return heapUsedBytes;
+	}
+}
@@ -0,0 +1,30 @@
+package models;
+
+/**
+ * JMX view of the most recent Gibbs sampling iteration, see
+ * {@link SamplerMetrics}
+ */
+public interface SamplerMetricsMBean
+{
+	public int getIteration();
+
+	public double getTokensPerSecond();
+
+	public double getIterationMillis();
+
+	public double getSamplingMillis();
+
+	public double getPerplexityMillis();
+
+	public double getIoMillis();
+
+	public double getChangedShare();
+
+	public double getTopicShare();
+
+	public double getSpecialWordShare();
+
+	public double getBackgroundShare();
+
+	public long getHeapUsedBytes();
+}
@@ -0,0 +1,127 @@
+package models;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides after each Gibbs sampling iteration whether the chain has converged
+ * (or run out of budget) so that inference can stop early and write the
+ * final sample.
+ *
+ * The log-likelihood is passed as a supplier and costs a full pass over the
+ * corpus, so policies only ask for it on the iterations they need it.
+ * Policies keep state across calls; use a new instance for each run.
+ */
+public interface StoppingPolicy
+{
+	/**
+	 * @param iter
+	 *            the iteration that just finished (1-based)
+	 * @param numChanged
+	 *            number of tokens whose assignment changed in this iteration
+	 * @param numTokens
+	 *            number of tokens in the corpus
+	 * @param logLikelihood
+	 *            computes the corpus log-likelihood under the current sample
+	 * @return true if sampling should stop after this iteration
+	 */
+	public boolean shouldStop(int iter, int numChanged, int numTokens,
+		DoubleSupplier logLikelihood);
+
+	/**
+	 * Stop when the relative change of the log-likelihood over the last
+	 * window evaluations falls below tolerance. The log-likelihood is
+	 * evaluated every evalInterval iterations.
+	 */
+	public static StoppingPolicy logLikelihoodWindow(final int window,
+		final double tolerance, final int evalInterval)
+	{
+		return new StoppingPolicy()
+		{
+			private final double[] history = new double[window + 1];
+			private int numEvaluations = 0;
+
+			@Override
+			public boolean shouldStop(int iter, int numChanged, int numTokens,
+				DoubleSupplier logLikelihood)
+			{
+				if (iter % evalInterval != 0)
+					return false;
+				double value = logLikelihood.getAsDouble();
+				history[numEvaluations % history.length] = value;
+				numEvaluations++;
+				if (numEvaluations <= window)
+					return false;
+				double previous = history[numEvaluations % history.length];
+				double change = Math.abs((value - previous) / previous);
+				System.out.println("\t\tLog-likelihood: " + value
+					+ ", relative change over " + window + " evaluations: "
+					+ change);
+				return change < tolerance;
+			}
+		};
+	}
+
+	/**
+	 * Stop when fewer than threshold (a fraction of the tokens) change their
+	 * assignment in patience consecutive iterations.
+	 */
+	public static StoppingPolicy changeRate(final double threshold,
+		final int patience)
+	{
+		return new StoppingPolicy()
+		{
+			private int numQuietIterations = 0;
+
+			@Override
+			public boolean shouldStop(int iter, int numChanged, int numTokens,
+				DoubleSupplier logLikelihood)
+			{
+				if (numChanged < threshold * numTokens)
+					numQuietIterations++;
+				else
+					numQuietIterations = 0;
+				return numQuietIterations >= patience;
+			}
+		};
+	}
+
+	/**
+	 * Stop once the given wall-clock budget, counted from the creation of the
+	 * policy, is spent.
+	 */
+	public static StoppingPolicy wallClock(final long budgetMillis)
+	{
+		return new StoppingPolicy()
+		{
+			private final long startTime = System.currentTimeMillis();
+
+			@Override
+			public boolean shouldStop(int iter, int numChanged, int numTokens,
+				DoubleSupplier logLikelihood)
+			{
+				return System.currentTimeMillis() - startTime >= budgetMillis;
+			}
+		};
+	}
+
+	/**
+	 * Stop as soon as any of the given policies says so. Every policy is
+	 * consulted on every iteration so that their state stays current.
+	 */
+	public static StoppingPolicy anyOf(final StoppingPolicy... policies)
+	{
+		return new StoppingPolicy()
+		{
+			@Override
+			public boolean shouldStop(int iter, int numChanged, int numTokens,
+				DoubleSupplier logLikelihood)
+			{
+				boolean stop = false;
+				for (StoppingPolicy policy : policies)
+					stop |= policy.shouldStop(iter, numChanged, numTokens,
+						logLikelihood);
+				return stop;
+			}
+		};
+	}
+}
@@ -0,0 +1,128 @@
+package models;
+
+/**
+ * Computes the unnormalized topic weights of one token,
+ *
+ * out[t] = scale * (docTopicRow[t] + alphas[t]) * (wordTopicRow[t] + beta)
+ * * invTopicDenominators[t],
+ *
+ * over word-major count rows (wordTopicRow[t] is the count of the token's
+ * word in topic t), together with the sum of each block of blockSize()
+ * consecutive weights. The block sums let the samplers locate the sampled
+ * topic with a two-level search (see utility.FuncUtils.findInBlocks).
+ *
+ * create() returns the SIMD kernel built on jdk.incubator.vector when it is
+ * on the class path and the module is enabled, and the scalar kernel
+ * otherwise. The SIMD kernel lives in the separate source root src-vector,
+ * compiled and run with "--add-modules jdk.incubator.vector" (JDK 16+).
+ */
+public abstract class TopicKernel
+{
+	public abstract int blockSize();
+
+	/**
+	 * @return the sum of out[0..numTopics)
+	 */
+	public abstract double fill(int numTopics, int[] docTopicRow,
+		double[] alphas, int[] wordTopicRow, double beta,
+		double[] invTopicDenominators, double scale, double[] out,
+		double[] blockSums);
+
+	public int numBlocks(int numTopics)
+	{
+		return (numTopics + blockSize() - 1) / blockSize();
+	}
+
+	public static TopicKernel create()
+	{
+		try {
+			return (TopicKernel) Class.forName("models.VectorTopicKernel")
+				.getDeclaredConstructor().newInstance();
+		}
+		catch (Throwable e) {
+			// jdk.incubator.vector is not available
+			return new ScalarTopicKernel();
+		}
+	}
+
+	/**
+	 * Scalar implementation, used when the Vector API is not available
+	 */
+	public static class ScalarTopicKernel
+		extends TopicKernel
+	{
+		private static final int BLOCK_SIZE = 8;
+
+		@Override
+		public int blockSize()
+		{
+			return BLOCK_SIZE;
+		}
+
+		@Override
+		public double fill(int numTopics, int[] docTopicRow, double[] alphas,
+			int[] wordTopicRow, double beta, double[] invTopicDenominators,
+			double scale, double[] out, double[] blockSums)
+		{
+			double sum = 0.0;
+			for (int start = 0, b = 0; start < numTopics; start += BLOCK_SIZE, b++) {
+				int end = Math.min(start + BLOCK_SIZE, numTopics);
+				double blockSum = 0.0;
+				for (int tIndex = start; tIndex < end; tIndex++) {
+					double pro = scale * (docTopicRow[tIndex] + alphas[tIndex])
+						* (wordTopicRow[tIndex] + beta)
+						* invTopicDenominators[tIndex];
+					out[tIndex] = pro;
+					blockSum += pro;
+				}
+				blockSums[b] = blockSum;
+				sum += blockSum;
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * Micro-benchmark of the scalar and the selected kernel at K = 50, 200
+	 * and 1000
+	 */
+	public static void main(String[] args)
+	{
+		TopicKernel[] kernels = { new ScalarTopicKernel(), create() };
+		java.util.Random random = new java.util.Random(1);
+		for (int numTopics : new int[] { 50, 200, 1000 }) {
+			int numRows = 1024;
+			int[][] docRows = new int[numRows][numTopics];
+			int[][] wordRows = new int[numRows][numTopics];
+			double[] alphas = new double[numTopics];
+			double[] inv = new double[numTopics];
+			for (int tIndex = 0; tIndex < numTopics; tIndex++) {
+				alphas[tIndex] = 0.1;
+				inv[tIndex] = 1.0 / (1000 + random.nextInt(1000));
+				for (int r = 0; r < numRows; r++) {
+					docRows[r][tIndex] = random.nextInt(4);
+					wordRows[r][tIndex] = random.nextInt(8);
+				}
+			}
+			double[] out = new double[numTopics];
+			for (TopicKernel kernel : kernels) {
+				double[] blockSums = new double[kernel.numBlocks(numTopics)];
+				double check = 0;
+				long elapsed = 0;
+				for (int round = 0; round < 20; round++) {
+					long start = System.nanoTime();
+					for (int r = 0; r < 100000; r++)
+						check += kernel.fill(numTopics, docRows[r % numRows],
+							alphas, wordRows[(r * 7) % numRows], 0.01, inv, 1.0,
+							out, blockSums);
+					// The first rounds warm up the JIT
+					if (round >= 10)
+						elapsed += System.nanoTime() - start;
+				}
+				System.out.println("K=" + numTopics + "\t"
+					+ kernel.getClass().getSimpleName() + "\t" + elapsed
+					/ 1000000.0 + " ns/token\t(" + check + ")");
+			}
+		}
+	}
+}
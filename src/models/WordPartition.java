@@ -0,0 +1,98 @@
+package models;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Partition of a corpus for model-parallel (word-partitioned) sampling, as
+ * in Yahoo LDA and LightLDA.
+ *
+ * The vocabulary is split into numBlocks blocks of about equal token
+ * frequency and the documents into numBlocks contiguous shards of about
+ * equal length. In round r of a sweep, worker p samples the tokens of shard
+ * p whose words fall in block (p + r) mod numBlocks, so within a round no
+ * two workers share a document or a word, and after numBlocks rounds every
+ * token has been sampled once.
+ *
+ * The tokens of every document are indexed by block so that a round only
+ * visits its own tokens.
+ */
+public class WordPartition
+{
+	public final int numBlocks;
+	// Block of every word
+	public final int[] wordBlock;
+	// Shard p covers documents [shardStart[p], shardStart[p + 1])
+	public final int[] shardStart;
+	// Token positions of every document, grouped by block
+	public final int[][] tokenOrder;
+	// Tokens of block b in document d are tokenOrder[d][blockOffsets[d][b]
+	// .. blockOffsets[d][b + 1])
+	public final int[][] blockOffsets;
+
+	public WordPartition(List<List<Integer>> corpus, int vocabularySize,
+		int inNumBlocks)
+	{
+		numBlocks = inNumBlocks;
+		int numDocuments = corpus.size();
+
+		// Greedily give the most frequent remaining word to the lightest block
+		long[] frequency = new long[vocabularySize];
+		long numTokens = 0;
+		for (List<Integer> document : corpus) {
+			for (int word : document)
+				frequency[word]++;
+			numTokens += document.size();
+		}
+		long[] order = new long[vocabularySize];
+		for (int wIndex = 0; wIndex < vocabularySize; wIndex++)
+			order[wIndex] = (frequency[wIndex] << 32) | wIndex;
+		Arrays.sort(order);
+		wordBlock = new int[vocabularySize];
+		long[] blockLoad = new long[numBlocks];
+		for (int i = vocabularySize - 1; i >= 0; i--) {
+			int lightest = 0;
+			for (int b = 1; b < numBlocks; b++)
+				if (blockLoad[b] < blockLoad[lightest])
+					lightest = b;
+			int word = (int) order[i];
+			wordBlock[word] = lightest;
+			blockLoad[lightest] += frequency[word];
+		}
+
+		shardStart = new int[numBlocks + 1];
+		long tokens = 0;
+		int shard = 1;
+		for (int dIndex = 0; dIndex < numDocuments && shard < numBlocks; dIndex++) {
+			tokens += corpus.get(dIndex).size();
+			if (tokens >= numTokens * shard / numBlocks)
+				shardStart[shard++] = dIndex + 1;
+		}
+		for (; shard <= numBlocks; shard++)
+			shardStart[shard] = numDocuments;
+
+		tokenOrder = new int[numDocuments][];
+		blockOffsets = new int[numDocuments][numBlocks + 1];
+		for (int dIndex = 0; dIndex < numDocuments; dIndex++) {
+			List<Integer> document = corpus.get(dIndex);
+			int[] offsets = blockOffsets[dIndex];
+			for (int word : document)
+				offsets[wordBlock[word] + 1]++;
+			for (int b = 0; b < numBlocks; b++)
+				offsets[b + 1] += offsets[b];
+			int[] next = Arrays.copyOf(offsets, numBlocks);
+			int[] positions = new int[document.size()];
+			for (int wIndex = 0; wIndex < document.size(); wIndex++)
+				positions[next[wordBlock[document.get(wIndex)]]++] = wIndex;
+			tokenOrder[dIndex] = positions;
+		}
+	}
+
+	/**
+	 * Block sampled by the given worker in the given round
+	 */
+	public int blockForRound(int worker, int round)
+	{
+		return (worker + round) % numBlocks;
+	}
+}
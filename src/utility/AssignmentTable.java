@@ -0,0 +1,162 @@
+package utility;
+
+import java.util.Arrays;
+
+/**
+ * Per-token assignments (topic or subtopic ids) of every document. Values
+ * below 65536 are stored in 16-bit cells, otherwise in int cells.
+ */
+public abstract class AssignmentTable
+{
+    /**
+     * Create a table for documents of the given lengths holding values in
+     * [0, numValues)
+     */
+    public static AssignmentTable create(int[] docLengths, int numValues)
+    {
+        if (numValues <= Character.MAX_VALUE + 1)
+            return new ShortAssignmentTable(docLengths);
+        return new IntAssignmentTable(docLengths);
+    }
+
+    public abstract int numDocuments();
+
+    public abstract int length(int doc);
+
+    public abstract int get(int doc, int pos);
+
+    public abstract void set(int doc, int pos, int value);
+
+    /**
+     * A table holding the documents of this one followed by empty documents
+     * of the given lengths
+     */
+    public abstract AssignmentTable append(int[] docLengths);
+
+    /**
+     * A table holding the given documents of this one, in that order
+     */
+    public abstract AssignmentTable select(int[] docs);
+
+    public static class IntAssignmentTable
+        extends AssignmentTable
+    {
+        private final int[][] cells;
+
+        public IntAssignmentTable(int[] docLengths)
+        {
+            cells = new int[docLengths.length][];
+            for (int i = 0; i < docLengths.length; i++)
+                cells[i] = new int[docLengths[i]];
+        }
+
+        private IntAssignmentTable(int[][] inCells)
+        {
+            cells = inCells;
+        }
+
+        @Override
+        public AssignmentTable append(int[] docLengths)
+        {
+            int[][] newCells = Arrays.copyOf(cells, cells.length
+                + docLengths.length);
+            for (int i = 0; i < docLengths.length; i++)
+                newCells[cells.length + i] = new int[docLengths[i]];
+            return new IntAssignmentTable(newCells);
+        }
+
+        @Override
+        public AssignmentTable select(int[] docs)
+        {
+            int[][] newCells = new int[docs.length][];
+            for (int i = 0; i < docs.length; i++)
+                newCells[i] = cells[docs[i]];
+            return new IntAssignmentTable(newCells);
+        }
+
+        @Override
+        public int numDocuments()
+        {
+            return cells.length;
+        }
+
+        @Override
+        public int length(int doc)
+        {
+            return cells[doc].length;
+        }
+
+        @Override
+        public int get(int doc, int pos)
+        {
+            return cells[doc][pos];
+        }
+
+        @Override
+        public void set(int doc, int pos, int value)
+        {
+            cells[doc][pos] = value;
+        }
+    }
+
+    public static class ShortAssignmentTable
+        extends AssignmentTable
+    {
+        private final char[][] cells;
+
+        public ShortAssignmentTable(int[] docLengths)
+        {
+            cells = new char[docLengths.length][];
+            for (int i = 0; i < docLengths.length; i++)
+                cells[i] = new char[docLengths[i]];
+        }
+
+        private ShortAssignmentTable(char[][] inCells)
+        {
+            cells = inCells;
+        }
+
+        @Override
+        public AssignmentTable append(int[] docLengths)
+        {
+            char[][] newCells = Arrays.copyOf(cells, cells.length
+                + docLengths.length);
+            for (int i = 0; i < docLengths.length; i++)
+                newCells[cells.length + i] = new char[docLengths[i]];
+            return new ShortAssignmentTable(newCells);
+        }
+
+        @Override
+        public AssignmentTable select(int[] docs)
+        {
+            char[][] newCells = new char[docs.length][];
+            for (int i = 0; i < docs.length; i++)
+                newCells[i] = cells[docs[i]];
+            return new ShortAssignmentTable(newCells);
+        }
+
+        @Override
+        public int numDocuments()
+        {
+            return cells.length;
+        }
+
+        @Override
+        public int length(int doc)
+        {
+            return cells[doc].length;
+        }
+
+        @Override
+        public int get(int doc, int pos)
+        {
+            return cells[doc][pos];
+        }
+
+        @Override
+        public void set(int doc, int pos, int value)
+        {
+            cells[doc][pos] = (char) value;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package utility;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Disk-resident word-ID corpus, read sequentially through memory-mapped
+ * windows (see MappedFile).
+ *
+ * Layout (big-endian): a header of magic "SWBC", version, number of
+ * documents, vocabulary size and number of words (long), followed by every
+ * document as its length and its word IDs. The words of the vocabulary file
+ * are written as "word id" lines in ID order.
+ */
+public class BinaryCorpus
+    implements Closeable
+{
+    public static final int MAGIC = 0x53574243;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+
+    public final int numDocuments;
+    public final int vocabularySize;
+    public final long numWords;
+
+    private final MappedFile file;
+    private long position;
+
+    public BinaryCorpus(String path)
+        throws IOException
+    {
+        file = new MappedFile(path, false);
+        ByteBuffer header = file.window(0, HEADER_SIZE);
+        if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+            file.close();
+            throw new IOException(path + " is not a binary corpus");
+        }
+        numDocuments = header.getInt();
+        vocabularySize = header.getInt();
+        numWords = header.getLong();
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Go back to the first document
+     */
+    public void rewind()
+    {
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Read the length of the next document; its words must be read next
+     */
+    public int nextLength()
+        throws IOException
+    {
+        int length = file.window(position, 4).getInt();
+        position += 4;
+        return length;
+    }
+
+    /**
+     * Read the words of the current document into words[0..length)
+     */
+    public void read(int[] words, int length)
+        throws IOException
+    {
+        file.window(position, 4 * length).asIntBuffer().get(words, 0, length);
+        position += 4L * length;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        file.close();
+    }
+
+    /**
+     * Convert a text corpus (one document per line) to the binary format,
+     * numbering words by their first occurrence as the samplers do
+     */
+    public static void convert(String pathToCorpus, String pathToBinary,
+        String pathToVocabulary)
+        throws IOException
+    {
+        HashMap<String, Integer> word2Id = new HashMap<String, Integer>();
+        List<String> id2Word = new ArrayList<String>();
+        int numDocuments = 0;
+        long numWords = 0;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(pathToBinary), 1 << 16));
+        BufferedReader br = new BufferedReader(new FileReader(pathToCorpus));
+        try {
+            // Header placeholder, filled in below
+            out.write(new byte[HEADER_SIZE]);
+            for (String doc; (doc = br.readLine()) != null;) {
+                if (doc.trim().length() == 0)
+                    continue;
+                String[] words = doc.trim().split("\\s+");
+                out.writeInt(words.length);
+                for (String word : words) {
+                    Integer id = word2Id.get(word);
+                    if (id == null) {
+                        id = id2Word.size();
+                        word2Id.put(word, id);
+                        id2Word.add(word);
+                    }
+                    out.writeInt(id);
+                }
+                numDocuments++;
+                numWords += words.length;
+            }
+        }
+        finally {
+            br.close();
+            out.close();
+        }
+
+        writeHeader(pathToBinary, numDocuments, id2Word.size(), numWords);
+        writeVocabulary(pathToVocabulary, id2Word);
+    }
+
+    /**
+     * Fill in the header of a binary corpus whose documents were written
+     * after HEADER_SIZE placeholder bytes
+     */
+    public static void writeHeader(String pathToBinary, int numDocuments,
+        int vocabularySize, long numWords)
+        throws IOException
+    {
+        RandomAccessFile header = new RandomAccessFile(pathToBinary, "rw");
+        try {
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(numDocuments);
+            header.writeInt(vocabularySize);
+            header.writeLong(numWords);
+        }
+        finally {
+            header.close();
+        }
+    }
+
+    /**
+     * Write the words, indexed by word ID, as "word id" lines
+     */
+    public static void writeVocabulary(String pathToVocabulary,
+        List<String> id2Word)
+        throws IOException
+    {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(
+            pathToVocabulary));
+        try {
+            for (int id = 0; id < id2Word.size(); id++)
+                writer.write(id2Word.get(id) + " " + id + "\n");
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Read a vocabulary file written by convert(), indexed by word ID
+     */
+    public static String[] readVocabulary(String pathToVocabulary,
+        int vocabularySize)
+        throws IOException
+    {
+        String[] id2Word = new String[vocabularySize];
+        BufferedReader br = new BufferedReader(new FileReader(pathToVocabulary));
+        try {
+            for (String line; (line = br.readLine()) != null;) {
+                int split = line.lastIndexOf(' ');
+                if (split < 0)
+                    continue;
+                id2Word[Integer.parseInt(line.substring(split + 1))] = line
+                    .substring(0, split);
+            }
+        }
+        finally {
+            br.close();
+        }
+        return id2Word;
+    }
+}
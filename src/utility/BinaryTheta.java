@@ -0,0 +1,49 @@
+package utility;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary document-topic distributions, an alternative to the text .theta
+ * file for large corpora: a header of magic "SWBT", number of documents and
+ * number of topics, followed by the row-major proportions as floats
+ * (big-endian).
+ */
+public class BinaryTheta
+    implements Closeable
+{
+    public static final int MAGIC = 0x53574254;
+    public static final String SUFFIX = ".theta.bin";
+
+    private final DataOutputStream out;
+
+    public BinaryTheta(String path, int numDocuments, int numTopics)
+        throws IOException
+    {
+        out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(numDocuments);
+        out.writeInt(numTopics);
+    }
+
+    /**
+     * Write the next proportion, documents in order and topics in order
+     * within a document
+     */
+    public void write(double pro)
+        throws IOException
+    {
+        out.writeFloat((float) pro);
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        out.close();
+    }
+}
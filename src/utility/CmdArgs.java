@@ -17,12 +17,48 @@ public class CmdArgs
 	@Option(name = "-alpha", usage = "Specify alpha")
 	public double alpha = 0.1;
 
-	@Option(name = "-beta", usage = "Specify beta")
+	@Option(name = "-beta", usage = "Specify beta (SWB: of the topic words)")
 	public double beta = 0.01;
 
+	@Option(name = "-sbeta", usage = "Specify beta of the special words (SWB)")
+	public double specialBeta = 0.01;
+
+	@Option(name = "-bbeta", usage = "Specify beta of the background words (SWB)")
+	public double backgroundBeta = 0.0001;
+
+	@Option(name = "-gamma", usage = "Specify gamma (SWB)")
+	public double gamma = 0.3;
+
 	@Option(name = "-niters", usage = "Specify number of iterations")
 	public int niters = 2000;
 
+	@Option(name = "-engine", usage = "Specify inference engine: gibbs, kernel, parallel, partitioned or onlinevb (LDA); gibbs, kernel or outofcore (SWB)")
+	public String engine = "gibbs";
+
+	@Option(name = "-nthreads", usage = "Specify number of threads (0 = number of processors)")
+	public int nthreads = 0;
+
+	@Option(name = "-seed", usage = "Specify random seed (0 = seeded from the clock); with a seed, parallel runs are reproducible")
+	public int seed = 0;
+
+	@Option(name = "-selfcheck", usage = "Train twice with the seed and check that the outputs are identical")
+	public boolean selfCheck = false;
+
+	@Option(name = "-tables", usage = "Specify count table cell type: int, short or byte")
+	public String countTableType = CountTable.INT;
+
+	@Option(name = "-optint", usage = "Specify hyper-parameter optimization interval (0 = never)")
+	public int optimizeInterval = 0;
+
+	@Option(name = "-optburnin", usage = "Specify number of iterations before the first hyper-parameter optimization")
+	public int optimizeBurnIn = 200;
+
+	@Option(name = "-npasses", usage = "Specify number of passes over the corpus (onlinevb)")
+	public int npasses = 2;
+
+	@Option(name = "-batchsize", usage = "Specify number of documents per mini-batch (onlinevb)")
+	public int batchsize = 256;
+
 	@Option(name = "-twords", usage = "Specify number of top topical words")
 	public int twords = 20;
 
@@ -35,10 +71,67 @@ public class CmdArgs
 	@Option(name = "-sstep")
 	public int savestep = 0;
 
+	@Option(name = "-thetaformat", usage = "Specify format of the document-topic output: text or binary")
+	public String thetaFormat = "text";
+
+	@Option(name = "-metrics", usage = "Specify a CSV or JSON-lines file for per-iteration metrics")
+	public String metricsFile = "";
+
+	@Option(name = "-jmx", usage = "Publish the per-iteration metrics through JMX as models:type=SamplerMetrics,name=<name>")
+	public boolean jmx = false;
+
+	@Option(name = "-stopwindow", usage = "Stop when the log-likelihood changes by less than -stoptol over this many evaluations (0 = never; gibbs, kernel, parallel, partitioned)")
+	public int stopWindow = 0;
+
+	@Option(name = "-stoptol", usage = "Specify relative log-likelihood change for -stopwindow")
+	public double stopTolerance = 1e-4;
+
+	@Option(name = "-stopevery", usage = "Evaluate the log-likelihood for -stopwindow every this many iterations")
+	public int stopEvery = 10;
+
+	@Option(name = "-stopchange", usage = "Stop when fewer than this share of the tokens change topic in -stoppatience consecutive iterations (0 = never)")
+	public double stopChange = 0.0;
+
+	@Option(name = "-stoppatience", usage = "Specify number of quiet iterations for -stopchange")
+	public int stopPatience = 5;
+
+	@Option(name = "-stoptime", usage = "Stop after this many seconds of sampling (0 = no limit)")
+	public int stopTime = 0;
+
+	@Option(name = "-evalstep", usage = "Score the sample against the -label golden labels every this many iterations (gibbs, kernel, parallel, partitioned)")
+	public int evalstep = 0;
+
+	@Option(name = "-update", usage = "Add the documents of this file to the SWB model of -corpus and -initFile and resample them (gibbs, kernel)")
+	public String updateDocuments = "";
+
+	@Option(name = "-nsweeps", usage = "Specify number of incremental sweeps for -update")
+	public int nsweeps = 50;
+
+	@Option(name = "-rejuvenation", usage = "Specify old documents resampled per new document in each -update sweep")
+	public double rejuvenation = 1.0;
+
+	@Option(name = "-maxdocs", usage = "Keep at most this many documents after -update, retiring the oldest (0 = keep all)")
+	public int maxDocuments = 0;
+
+	@Option(name = "-keepprob", usage = "Specify probability that an old document survives an -update")
+	public double keepProbability = 1.0;
+
+	@Option(name = "-server", usage = "Specify host:port of the parameter server (models.DistributedWorker)")
+	public String server = "localhost:9999";
+
+	@Option(name = "-worker", usage = "Specify the shard of this worker, 0 to -nworkers - 1 (models.DistributedWorker)")
+	public int worker = 0;
+
+	@Option(name = "-nworkers", usage = "Specify number of workers (models.DistributedWorker)")
+	public int nworkers = 1;
+
+	@Option(name = "-staleness", usage = "Specify number of sweeps a worker may run ahead of the slowest one (models.DistributedWorker)")
+	public int staleness = 1;
+
 	@Option(name = "-dir")
 	public String dir = "";
 
-	@Option(name = "-label")
+	@Option(name = "-label", usage = "Specify golden labels file (Eval, -evalstep)")
 	public String labelFile = "";
 
 	@Option(name = "-prob")
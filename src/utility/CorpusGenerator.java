@@ -1,35 +1,45 @@
 package utility;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
 
-import edu.stanford.nlp.ling.Word;
-import edu.stanford.nlp.process.DocumentPreprocessor;
-import edu.stanford.nlp.process.PTBTokenizer;
-
 public class CorpusGenerator {
 	private static File dataset_folder = new File("security_corpus/cve/");
 	private static Set<String> stopwords = null;
 	
 	private static String DocumentsListPath = "data/documentsList.txt";
 	private static String CorpusPath = "data/corpus.txt";
+
+	// Pending documents per worker thread
+	private static final int QUEUE_PER_THREAD = 16;
 		
 	public static void main(String[] args) {
 		try {
@@ -37,113 +47,187 @@ public class CorpusGenerator {
 		//	PorterStemmer stemmer = new PorterStemmer();
 
 			File[] listOfFiles = dataset_folder.listFiles();
+			// Sorted, so that the output order does not depend on the file system
+			Arrays.sort(listOfFiles);
 			String line = null;
-			boolean flag =false;
-			/** creating dictionary vector **/
-			Vector<String> wordList = new Vector<String>();
+			/** creating dictionary: the words of WordList.txt that are not stop words.
+			 * Terms are lower-cased as they are looked up, so words with upper-case
+			 * letters could never match and are left out **/
+			TermIndex dictionary = new TermIndex(true);
 			BufferedReader wordListFile = new BufferedReader(new FileReader(
 					new File("data/WordList.txt")));
 			while ((line = wordListFile.readLine()) != null)
-				if (line != "")
-					wordList.add(line);
+				if (!stopwords.contains(line) && isLowerCase(line))
+					dictionary.intern(line);
 			wordListFile.close();
 
+			// args[0]: ascii (default), unicode or stanford, see Tokenizer
+			Tokenizer tokenizer = Tokenizer.create(args.length > 0 ? args[0] : "ascii");
+			generate(listOfFiles, dictionary, tokenizer, Runtime.getRuntime().availableProcessors());
+		}catch(Exception e){
+			System.out.println("Exception Message: "+e.getMessage());
+		}
+		
+	}
+
+	/**
+	 * Preprocess the files on numThreads workers and append the non-empty
+	 * documents to the corpus and their file names to the documents list, in
+	 * the order of the files.
+	 *
+	 * A feeder thread submits the files and queues the pending results in a
+	 * bounded queue, which the calling thread drains in order as the single
+	 * writer; at most QUEUE_PER_THREAD * numThreads documents are held in
+	 * memory. Documents are passed as dictionary IDs, and the writer copies
+	 * the words from the dictionary.
+	 *
+	 * If the corpus starts empty, the same documents are also written as
+	 * corpus.txt.bin and corpus.txt.vocabulary (see BinaryCorpus), with the
+	 * word IDs the samplers would assign, so that they load the corpus
+	 * without hashing its words again. An appended corpus gets no binary
+	 * copy (an earlier one is removed); BinaryCorpus.convert() makes one.
+	 */
+	public static void generate(final File[] listOfFiles,
+			final TermIndex dictionary, final Tokenizer tokenizer,
+			int numThreads) throws Exception {
+		final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		final BlockingQueue<Future<int[]>> pending = new ArrayBlockingQueue<Future<int[]>>(
+				QUEUE_PER_THREAD * numThreads);
+		Thread feeder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (final File file : listOfFiles) {
+						pending.put(pool.submit(new Callable<int[]>() {
+							@Override
+							public int[] call() throws Exception {
+								return file.isFile() ? preprocess(file, dictionary, tokenizer) : null;
+							}
+						}));
+					}
+				} catch (InterruptedException e) {
+					// The writer failed and stopped the pool
+				}
+			}
+		}, "CorpusGenerator-feeder");
+		feeder.setDaemon(true);
+		feeder.start();
+
+		// Both lists are appended to, as before, but opened once
+		boolean binary = new File(CorpusPath).length() == 0;
+		PrintWriter corpusWriter = appendWriter(CorpusPath);
+		PrintWriter documentsListWriter = appendWriter(DocumentsListPath);
+		DataOutputStream binaryWriter = null;
+		// Binary word ID of every dictionary ID, numbered by first occurrence
+		int[] wordIds = new int[dictionary.size()];
+		Arrays.fill(wordIds, -1);
+		List<String> id2Word = new ArrayList<String>();
+		int numDocuments = 0;
+		long numWords = 0;
+		try {
+			if (binary) {
+				binaryWriter = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(CorpusPath + ".bin"), 1 << 16));
+				binaryWriter.write(new byte[BinaryCorpus.HEADER_SIZE]);
+			}
 			for (int i = 0; i < listOfFiles.length; i++) {
-				File file = listOfFiles[i];
-				StringBuffer document = new StringBuffer();
-				if (file.isFile()) {
-					// Stanford CoreNLP for analyzing each document: splitting sentences, tokanizing, etc. 
-					DocumentPreprocessor dp = new DocumentPreprocessor(file.getAbsolutePath());
-					for (List sentence : dp) {
-						// processing each sentence  
-						for (int j = 0; j < sentence.size(); j++) {
-							String terms = sentence.get(j).toString();
-							String cleanTerm = terms.replaceAll("[^a-zA-Z0-9]+", "!!");
-							String[] tokens = cleanTerm.split("!!");
-							if (tokens.length > 0) {
-								for (String term : tokens) {
-									if (!containsstopword(term.toString().toLowerCase())
-											&& (!term.isEmpty())) {
-									/*	String word = stemmer.stemming(term
-												.toString().toLowerCase());*/
-										if (wordList
-												.indexOf(term.toLowerCase()) != -1) {
-										//	document.append(wordList.indexOf(term.toLowerCase()));
-											document.append(term.toString().toLowerCase());
-											document.append(" ");
-										//	flag = true;
-										}
-									}
-								}
+				int[] document;
+				try {
+					document = pending.take().get();
+				} catch (ExecutionException e) {
+					throw new IOException("Cannot preprocess "
+							+ listOfFiles[i].getName(), e.getCause());
+				}
+				if (document == null)
+					continue;
+				if (document.length > 0) {
+					//write file name into Doc list.
+					documentsListWriter.println(listOfFiles[i].getName());
+					//write the content into corpus.txt
+					for (int id : document) {
+						dictionary.write(id, corpusWriter);
+						corpusWriter.write(' ');
+					}
+					corpusWriter.println();
+					if (binary) {
+						binaryWriter.writeInt(document.length);
+						for (int id : document) {
+							if (wordIds[id] < 0) {
+								wordIds[id] = id2Word.size();
+								id2Word.add(dictionary.term(id));
 							}
+							binaryWriter.writeInt(wordIds[id]);
 						}
-				/*		if(flag){
-							document.append("\t");
-							flag = false;
-						}*/
-					}
-					if (document != null && !(document.toString().isEmpty())) {
-						//write file name into Doc list.
-						createDocumentsList(listOfFiles[i].getName());
-						System.out.println("\nDocument: " + document);
-						//write the content into corpus.txt
-						writingToCorpusFile(document);
-					}else{
-						System.err.println("Docuemtn "+ listOfFiles[i].getName() +" is Empty !!");
 					}
+					numDocuments++;
+					numWords += document.length;
+					if (numDocuments % 10000 == 0)
+						System.out.println(numDocuments + " documents written");
+				}else{
+					System.err.println("Docuemtn "+ listOfFiles[i].getName() +" is Empty !!");
 				}
 			}
-			
-		}catch(Exception e){
-			System.out.println("Exception Message: "+e.getMessage());
+		} finally {
+			feeder.interrupt();
+			pool.shutdownNow();
+			corpusWriter.close();
+			documentsListWriter.close();
+			if (binaryWriter != null)
+				binaryWriter.close();
 		}
-		
-	}
-	
-	public static void writingToCorpusFile(StringBuffer documnet) throws IOException{
-		
-		File file = new File(CorpusPath);
-		if (!file.exists()) {
-			// file.getParentFile().mkdirs();
-			file.createNewFile();
-			// System.out.println("Creating file: "+fn);
+		System.out.println(numDocuments + " documents written to " + CorpusPath);
+		if (binary) {
+			BinaryCorpus.writeHeader(CorpusPath + ".bin", numDocuments,
+					id2Word.size(), numWords);
+			BinaryCorpus.writeVocabulary(CorpusPath + ".vocabulary", id2Word);
+		} else if (new File(CorpusPath + ".bin").delete()) {
+			// It no longer matches the corpus
+			new File(CorpusPath + ".vocabulary").delete();
+			System.out.println("The corpus was appended to; removed the out-of-date "
+					+ CorpusPath + ".bin");
 		}
-		PrintWriter  bwr = new PrintWriter (new FileWriter(file,true));
-        
-        //write contents of StringBuffer to a file
-        bwr.println(documnet);
-       
-        //flush the stream
-        bwr.flush();
-       
-        //close the stream
-        bwr.close();
-       
-        System.out.println("Content of the document written to File.");
 	}
 
-	public static void createDocumentsList(String fn)
-			throws IOException {
+	/**
+	 * The dictionary IDs of the terms of a file, lower-cased
+	 */
+	static int[] preprocess(File file, TermIndex dictionary,
+			Tokenizer tokenizer) throws IOException {
+		DocumentCollector document = new DocumentCollector(dictionary);
+		tokenizer.tokenize(file, document);
+		return Arrays.copyOf(document.ids, document.length);
+	}
 
-		File file = new File(DocumentsListPath);
-		if (!file.exists()) {
-			// file.getParentFile().mkdirs();
-			file.createNewFile();
-			// System.out.println("Creating file: "+fn);
-		}
-		
-		PrintWriter bwr = new PrintWriter(new FileWriter(file, true));
+	private static class DocumentCollector implements Tokenizer.TermHandler {
+		private final TermIndex dictionary;
+		int[] ids = new int[256];
+		int length = 0;
 
-		// write contents of StringBuffer to a file
-		bwr.println(fn);
+		DocumentCollector(TermIndex inDictionary) {
+			dictionary = inDictionary;
+		}
 
-		// flush the stream
-		bwr.flush();
+		@Override
+		public void term(char[] chars, int start, int termLength) {
+			int id = dictionary.id(chars, start, termLength);
+			if (id < 0)
+				return;
+			if (length == ids.length)
+				ids = Arrays.copyOf(ids, 2 * length);
+			ids[length++] = id;
+		}
+	}
 
-		// close the stream
-		bwr.close();
+	private static boolean isLowerCase(String word) {
+		for (int k = 0; k < word.length(); k++)
+			if (Character.toLowerCase(word.charAt(k)) != word.charAt(k))
+				return false;
+		return true;
+	}
 
-		System.out.println("File name "+fn+" written to DocumentList.txt file.");
+	private static PrintWriter appendWriter(String path) throws IOException {
+		return new PrintWriter(new BufferedWriter(new FileWriter(path, true),
+				1 << 16));
 	}
 	
 	public static boolean containsstopword(String token) throws IOException {
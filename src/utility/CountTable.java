@@ -0,0 +1,370 @@
+package utility;
+
+import java.util.Arrays;
+
+/**
+ * A rows * cols table of non-negative counts, as used for the document-topic
+ * and topic-word counts of the samplers.
+ *
+ * IntCountTable stores plain int cells. ShortCountTable and ByteCountTable
+ * store unsigned 16-bit and 8-bit cells, cutting the memory traffic of the
+ * sampler by 2x and 4x; a cell whose count reaches the largest narrow value
+ * is marked with that value and its count moves to a hashed side table, so
+ * counts of any size remain exact.
+ *
+ * Different threads may update different cells of a table concurrently; the
+ * side table is locked on the rare accesses that need it.
+ *
+ * Tables grow with resize() and drop rows with selectRows(); both reuse the
+ * row arrays of the table, which must not be used afterwards. Rows are
+ * allocated with spare width so that repeatedly adding columns (e.g. new
+ * vocabulary) costs amortized constant time per cell.
+ */
+public abstract class CountTable
+{
+    public static final String INT = "int";
+    public static final String SHORT = "short";
+    public static final String BYTE = "byte";
+
+    protected final int numRows;
+    protected final int numCols;
+    // Allocated width of the rows, at least numCols
+    protected final int capacity;
+
+    protected CountTable(int rows, int cols, int inCapacity)
+    {
+        numRows = rows;
+        numCols = cols;
+        capacity = inCapacity;
+    }
+
+    /**
+     * Create a table with the given cell type: "int", "short" or "byte"
+     */
+    public static CountTable create(String type, int rows, int cols)
+    {
+        if (INT.equals(type))
+            return new IntCountTable(rows, cols);
+        if (SHORT.equals(type))
+            return new ShortCountTable(rows, cols);
+        if (BYTE.equals(type))
+            return new ByteCountTable(rows, cols);
+        throw new IllegalArgumentException("Unknown count table type: " + type);
+    }
+
+    public int rows()
+    {
+        return numRows;
+    }
+
+    public int cols()
+    {
+        return numCols;
+    }
+
+    public abstract int get(int row, int col);
+
+    public abstract void add(int row, int col, int delta);
+
+    public void increment(int row, int col)
+    {
+        add(row, col, 1);
+    }
+
+    public void decrement(int row, int col)
+    {
+        add(row, col, -1);
+    }
+
+    public void set(int row, int col, int value)
+    {
+        add(row, col, value - get(row, col));
+    }
+
+    /**
+     * A table with at least as many rows and columns as this one, holding
+     * its counts
+     */
+    public abstract CountTable resize(int rows, int cols);
+
+    /**
+     * A table holding the given distinct rows of this one, in that order
+     */
+    public abstract CountTable selectRows(int[] rows);
+
+    protected int newCapacity(int rows, int cols)
+    {
+        if ((rows < numRows) || (cols < numCols))
+            throw new IllegalArgumentException("Cannot shrink a " + numRows
+                + " * " + numCols + " table to " + rows + " * " + cols);
+        return cols <= capacity ? capacity : Math.max(cols, capacity
+            + (capacity >> 1));
+    }
+
+    /**
+     * Map every row of this table to its index in rows, or -1
+     */
+    protected int[] rowIndex(int[] rows)
+    {
+        int[] index = new int[numRows];
+        Arrays.fill(index, -1);
+        for (int r = 0; r < rows.length; r++)
+            index[rows[r]] = r;
+        return index;
+    }
+
+    /**
+     * Overflow entries of the selected rows, re-keyed by their new index
+     */
+    protected LongIntHashMap selectOverflow(LongIntHashMap overflow,
+        int[] rows)
+    {
+        int[] index = rowIndex(rows);
+        LongIntHashMap selected = new LongIntHashMap();
+        synchronized (overflow) {
+            for (long key : overflow.keys()) {
+                int row = index[(int) (key >>> 32)];
+                if (row >= 0)
+                    selected.put(key(row, (int) key), overflow.get(key));
+            }
+        }
+        return selected;
+    }
+
+    protected static long key(int row, int col)
+    {
+        return ((long) row << 32) | col;
+    }
+
+    public static class IntCountTable
+        extends CountTable
+    {
+        private final int[][] cells;
+
+        public IntCountTable(int rows, int cols)
+        {
+            this(new int[rows][cols], cols, cols);
+        }
+
+        private IntCountTable(int[][] inCells, int cols, int inCapacity)
+        {
+            super(inCells.length, cols, inCapacity);
+            cells = inCells;
+        }
+
+        @Override
+        public CountTable resize(int rows, int cols)
+        {
+            int width = newCapacity(rows, cols);
+            int[][] newCells = Arrays.copyOf(cells, rows);
+            for (int r = 0; r < rows; r++)
+                if (r >= numRows)
+                    newCells[r] = new int[width];
+                else if (width != capacity)
+                    newCells[r] = Arrays.copyOf(cells[r], width);
+            return new IntCountTable(newCells, cols, width);
+        }
+
+        @Override
+        public CountTable selectRows(int[] rows)
+        {
+            int[][] newCells = new int[rows.length][];
+            for (int r = 0; r < rows.length; r++)
+                newCells[r] = cells[rows[r]];
+            return new IntCountTable(newCells, numCols, capacity);
+        }
+
+        /**
+         * The backing array of a row, for kernels working on raw rows
+         */
+        public int[] row(int row)
+        {
+            return cells[row];
+        }
+
+        @Override
+        public int get(int row, int col)
+        {
+            return cells[row][col];
+        }
+
+        @Override
+        public void add(int row, int col, int delta)
+        {
+            cells[row][col] += delta;
+        }
+
+        @Override
+        public void increment(int row, int col)
+        {
+            cells[row][col]++;
+        }
+
+        @Override
+        public void decrement(int row, int col)
+        {
+            cells[row][col]--;
+        }
+    }
+
+    public static class ShortCountTable
+        extends CountTable
+    {
+        private static final int WIDE = Character.MAX_VALUE;
+
+        // char is Java's unsigned 16-bit type
+        private final char[][] cells;
+        private final LongIntHashMap overflow;
+
+        public ShortCountTable(int rows, int cols)
+        {
+            this(new char[rows][cols], cols, cols, new LongIntHashMap());
+        }
+
+        private ShortCountTable(char[][] inCells, int cols, int inCapacity,
+            LongIntHashMap inOverflow)
+        {
+            super(inCells.length, cols, inCapacity);
+            cells = inCells;
+            overflow = inOverflow;
+        }
+
+        @Override
+        public CountTable resize(int rows, int cols)
+        {
+            int width = newCapacity(rows, cols);
+            char[][] newCells = Arrays.copyOf(cells, rows);
+            for (int r = 0; r < rows; r++)
+                if (r >= numRows)
+                    newCells[r] = new char[width];
+                else if (width != capacity)
+                    newCells[r] = Arrays.copyOf(cells[r], width);
+            // Overflow keys do not depend on the table size
+            return new ShortCountTable(newCells, cols, width, overflow);
+        }
+
+        @Override
+        public CountTable selectRows(int[] rows)
+        {
+            char[][] newCells = new char[rows.length][];
+            for (int r = 0; r < rows.length; r++)
+                newCells[r] = cells[rows[r]];
+            return new ShortCountTable(newCells, numCols, capacity,
+                selectOverflow(overflow, rows));
+        }
+
+        @Override
+        public int get(int row, int col)
+        {
+            int value = cells[row][col];
+            if (value != WIDE)
+                return value;
+            synchronized (overflow) {
+                return overflow.get(key(row, col));
+            }
+        }
+
+        @Override
+        public void add(int row, int col, int delta)
+        {
+            char[] cellRow = cells[row];
+            int value = cellRow[col];
+            if (value == WIDE) {
+                synchronized (overflow) {
+                    overflow.add(key(row, col), delta);
+                }
+                return;
+            }
+            value += delta;
+            if (value >= 0 && value < WIDE) {
+                cellRow[col] = (char) value;
+            }
+            else {
+                cellRow[col] = (char) WIDE;
+                synchronized (overflow) {
+                    overflow.put(key(row, col), value);
+                }
+            }
+        }
+    }
+
+    public static class ByteCountTable
+        extends CountTable
+    {
+        private static final int WIDE = 0xFF;
+
+        private final byte[][] cells;
+        private final LongIntHashMap overflow;
+
+        public ByteCountTable(int rows, int cols)
+        {
+            this(new byte[rows][cols], cols, cols, new LongIntHashMap());
+        }
+
+        private ByteCountTable(byte[][] inCells, int cols, int inCapacity,
+            LongIntHashMap inOverflow)
+        {
+            super(inCells.length, cols, inCapacity);
+            cells = inCells;
+            overflow = inOverflow;
+        }
+
+        @Override
+        public CountTable resize(int rows, int cols)
+        {
+            int width = newCapacity(rows, cols);
+            byte[][] newCells = Arrays.copyOf(cells, rows);
+            for (int r = 0; r < rows; r++)
+                if (r >= numRows)
+                    newCells[r] = new byte[width];
+                else if (width != capacity)
+                    newCells[r] = Arrays.copyOf(cells[r], width);
+            // Overflow keys do not depend on the table size
+            return new ByteCountTable(newCells, cols, width, overflow);
+        }
+
+        @Override
+        public CountTable selectRows(int[] rows)
+        {
+            byte[][] newCells = new byte[rows.length][];
+            for (int r = 0; r < rows.length; r++)
+                newCells[r] = cells[rows[r]];
+            return new ByteCountTable(newCells, numCols, capacity,
+                selectOverflow(overflow, rows));
+        }
+
+        @Override
+        public int get(int row, int col)
+        {
+            int value = cells[row][col] & 0xFF;
+            if (value != WIDE)
+                return value;
+            synchronized (overflow) {
+                return overflow.get(key(row, col));
+            }
+        }
+
+        @Override
+        public void add(int row, int col, int delta)
+        {
+            byte[] cellRow = cells[row];
+            int value = cellRow[col] & 0xFF;
+            if (value == WIDE) {
+                synchronized (overflow) {
+                    overflow.add(key(row, col), delta);
+                }
+                return;
+            }
+            value += delta;
+            if (value >= 0 && value < WIDE) {
+                cellRow[col] = (byte) value;
+            }
+            else {
+                cellRow[col] = (byte) WIDE;
+                synchronized (overflow) {
+                    overflow.put(key(row, col), value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package utility;
+
+/**
+ * Fixed-point updates for Dirichlet hyper-parameters from count histograms,
+ * as described in:
+ *
+ * Hanna M. Wallach. 2008. Structured Topic Models for Language. PhD thesis,
+ * University of Cambridge (Chapter 2).
+ *
+ * Thomas P. Minka. 2000. Estimating a Dirichlet distribution. Technical
+ * report, MIT.
+ *
+ * The updates only need histograms of the counts (how many groups have count
+ * n for dimension k, and how many groups have total n), so one update costs
+ * O(maximum group size * number of dimensions) regardless of the number of
+ * groups.
+ */
+public class Dirichlet
+{
+    private static final double EULER_MASCHERONI = -0.5772156649015328606065121;
+    private static final double DIGAMMA_COEF_1 = 1 / 12.0;
+    private static final double DIGAMMA_COEF_2 = 1 / 120.0;
+    private static final double DIGAMMA_COEF_3 = 1 / 252.0;
+    private static final double DIGAMMA_COEF_4 = 1 / 240.0;
+    private static final double DIGAMMA_COEF_5 = 1 / 132.0;
+    private static final double DIGAMMA_COEF_6 = 691 / 32760.0;
+    private static final double DIGAMMA_COEF_7 = 1 / 12.0;
+    private static final double DIGAMMA_LARGE = 9.0;
+    private static final double DIGAMMA_SMALL = 0.000001;
+
+    public static double digamma(double z)
+    {
+        double psi = 0;
+        if (z < DIGAMMA_SMALL)
+            return EULER_MASCHERONI - (1 / z);
+        while (z < DIGAMMA_LARGE) {
+            psi -= 1 / z;
+            z++;
+        }
+        double invZ = 1 / z;
+        double invZSquared = invZ * invZ;
+        psi += Math.log(z) - .5 * invZ - invZSquared * (DIGAMMA_COEF_1
+            - invZSquared * (DIGAMMA_COEF_2 - invZSquared * (DIGAMMA_COEF_3
+                - invZSquared * (DIGAMMA_COEF_4 - invZSquared * (DIGAMMA_COEF_5
+                    - invZSquared * (DIGAMMA_COEF_6 - invZSquared
+                        * DIGAMMA_COEF_7))))));
+        return psi;
+    }
+
+    /**
+     * Update an asymmetric Dirichlet parameter vector in place.
+     *
+     * @param parameters
+     *            current parameters, overwritten with the new values
+     * @param countHistograms
+     *            countHistograms[k][n] = number of groups in which dimension
+     *            k has count n
+     * @param lengthHistogram
+     *            lengthHistogram[n] = number of groups with total count n
+     * @param shape
+     *            shape of a Gamma prior on the parameters (0 for none)
+     * @param scale
+     *            scale of a Gamma prior on the parameters
+     * @param numIterations
+     *            number of fixed-point iterations
+     * @return the sum of the new parameters
+     */
+    public static double learnParameters(double[] parameters,
+        int[][] countHistograms, int[] lengthHistogram, double shape,
+        double scale, int numIterations)
+    {
+        double parametersSum = 0;
+        for (int k = 0; k < parameters.length; k++)
+            parametersSum += parameters[k];
+
+        int[] nonZeroLimits = new int[countHistograms.length];
+        for (int k = 0; k < countHistograms.length; k++) {
+            nonZeroLimits[k] = -1;
+            for (int n = 0; n < countHistograms[k].length; n++)
+                if (countHistograms[k][n] > 0)
+                    nonZeroLimits[k] = n;
+        }
+
+        for (int iteration = 0; iteration < numIterations; iteration++) {
+            double denominator = 0;
+            double currentDigamma = 0;
+            for (int n = 1; n < lengthHistogram.length; n++) {
+                currentDigamma += 1 / (parametersSum + n - 1);
+                denominator += lengthHistogram[n] * currentDigamma;
+            }
+            denominator -= 1 / scale;
+
+            parametersSum = 0;
+            for (int k = 0; k < parameters.length; k++) {
+                double oldParameter = parameters[k];
+                double numerator = 0;
+                currentDigamma = 0;
+                for (int n = 1; n <= nonZeroLimits[k]; n++) {
+                    currentDigamma += 1 / (oldParameter + n - 1);
+                    numerator += countHistograms[k][n] * currentDigamma;
+                }
+                parameters[k] = oldParameter * (numerator + shape)
+                    / denominator;
+                // Keep the parameter strictly positive for unused dimensions
+                if (parameters[k] < 1e-10)
+                    parameters[k] = 1e-10;
+                parametersSum += parameters[k];
+            }
+        }
+        return parametersSum;
+    }
+
+    /**
+     * Update the concentration (parameter sum) of a symmetric Dirichlet over
+     * numDimensions dimensions.
+     *
+     * @param countHistogram
+     *            countHistogram[n] = number of (group, dimension) cells with
+     *            count n
+     * @param lengthHistogram
+     *            lengthHistogram[n] = number of groups with total count n
+     * @param numDimensions
+     *            number of dimensions of the Dirichlet
+     * @param currentValue
+     *            current concentration
+     * @return the new concentration; divide by numDimensions for the
+     *         per-dimension parameter
+     */
+    public static double learnSymmetricConcentration(int[] countHistogram,
+        int[] lengthHistogram, int numDimensions, double currentValue)
+    {
+        int largestNonZeroCount = 0;
+        for (int n = 0; n < countHistogram.length; n++)
+            if (countHistogram[n] > 0)
+                largestNonZeroCount = n;
+
+        int[] nonZeroLengths = new int[lengthHistogram.length];
+        int numNonZeroLengths = 0;
+        for (int n = 0; n < lengthHistogram.length; n++)
+            if (lengthHistogram[n] > 0)
+                nonZeroLengths[numNonZeroLengths++] = n;
+
+        for (int iteration = 0; iteration < 200; iteration++) {
+            double currentParameter = currentValue / numDimensions;
+
+            double currentDigamma = 0;
+            double numerator = 0;
+            for (int n = 1; n <= largestNonZeroCount; n++) {
+                currentDigamma += 1.0 / (currentParameter + n - 1);
+                numerator += countHistogram[n] * currentDigamma;
+            }
+
+            currentDigamma = 0;
+            double denominator = 0;
+            int previousLength = 0;
+            double cachedDigamma = digamma(currentValue);
+            for (int i = 0; i < numNonZeroLengths; i++) {
+                int length = nonZeroLengths[i];
+                if (length - previousLength > 20) {
+                    // Faster to compute the full digamma than to sum
+                    currentDigamma = digamma(currentValue + length)
+                        - cachedDigamma;
+                }
+                else {
+                    for (int n = previousLength; n < length; n++)
+                        currentDigamma += 1.0 / (currentValue + n);
+                }
+                denominator += currentDigamma * lengthHistogram[length];
+                previousLength = length;
+            }
+
+            if (numerator == 0 || denominator == 0)
+                break;
+            double newValue = currentParameter * numerator / denominator;
+            if (Math.abs(newValue - currentValue) < 1e-9 * currentValue) {
+                currentValue = newValue;
+                break;
+            }
+            currentValue = newValue;
+        }
+        return currentValue;
+    }
+}
@@ -6,7 +6,6 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 
 public class FuncUtils
 {
@@ -73,6 +72,86 @@ public class FuncUtils
         return probs.length - 1;
     }
 
+    /**
+     * Sample a value from a double array whose sum is already known
+     * 
+     * @param probs
+     * @param sum
+     *            the sum of probs
+     * @return
+     */
+    public static int nextDiscrete(double[] probs, double sum)
+    {
+        double r = MTRandom.nextDouble() * sum;
+
+        sum = 0.0;
+        for (int i = 0; i < probs.length; i++) {
+            sum += probs[i];
+            if (sum > r)
+                return i;
+        }
+        return probs.length - 1;
+    }
+
+    /**
+     * Sample a value from a double array whose sum is already known, using
+     * the given random number generator
+     * 
+     * @param probs
+     * @param sum
+     *            the sum of probs
+     * @param random
+     * @return
+     */
+    public static int nextDiscrete(double[] probs, double sum,
+        MersenneTwister random)
+    {
+        double r = random.nextDouble() * sum;
+
+        sum = 0.0;
+        for (int i = 0; i < probs.length; i++) {
+            sum += probs[i];
+            if (sum > r)
+                return i;
+        }
+        return probs.length - 1;
+    }
+
+    /**
+     * Find the index i at which the running sum of probs[0..length) first
+     * exceeds r, using the sums of consecutive blocks of blockSize values to
+     * skip whole blocks
+     * 
+     * @param probs
+     * @param blockSums
+     *            blockSums[b] = sum of probs[b * blockSize .. (b + 1) *
+     *            blockSize)
+     * @param blockSize
+     * @param length
+     * @param r
+     *            a value in [0, sum of probs[0..length))
+     * @return
+     */
+    public static int findInBlocks(double[] probs, double[] blockSums,
+        int blockSize, int length, double r)
+    {
+        int numBlocks = (length + blockSize - 1) / blockSize;
+        int b = 0;
+        for (; b < numBlocks - 1; b++) {
+            if (r < blockSums[b])
+                break;
+            r -= blockSums[b];
+        }
+        int end = Math.min((b + 1) * blockSize, length);
+        double sum = 0.0;
+        for (int i = b * blockSize; i < end; i++) {
+            sum += probs[i];
+            if (sum > r)
+                return i;
+        }
+        return end - 1;
+    }
+
     	// Sultan added
     	/**
     	 * Sample a x value
@@ -83,8 +162,7 @@ public class FuncUtils
     	{
     		int Max = 2;
     		int Min = 0;
-    		Random rand = new Random();
-    		int x = rand.nextInt((Max - Min) + 1);
+    		int x = MTRandom.nextInt((Max - Min) + 1);
     		return x;
     	}
     	
@@ -0,0 +1,116 @@
+package utility;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to int values, without boxing.
+ * Absent keys read as 0. Long.MIN_VALUE is reserved and cannot be used as a
+ * key.
+ */
+public class LongIntHashMap
+{
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntHashMap()
+    {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private int slot(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        int index = (int) (h ^ (h >>> 32)) & mask;
+        while (keys[index] != EMPTY && keys[index] != key)
+            index = (index + 1) & mask;
+        return index;
+    }
+
+    public int get(long key)
+    {
+        int index = slot(key);
+        return keys[index] == EMPTY ? 0 : values[index];
+    }
+
+    public boolean containsKey(long key)
+    {
+        return keys[slot(key)] != EMPTY;
+    }
+
+    public void put(long key, int value)
+    {
+        int index = slot(key);
+        if (keys[index] == EMPTY) {
+            keys[index] = key;
+            size++;
+            if (size * 2 > keys.length) {
+                values[index] = value;
+                rehash();
+                return;
+            }
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Add delta to the value of key and return the new value
+     */
+    public int add(long key, int delta)
+    {
+        int index = slot(key);
+        if (keys[index] == EMPTY) {
+            put(key, delta);
+            return delta;
+        }
+        values[index] += delta;
+        return values[index];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Keys of the map, in no particular order
+     */
+    public long[] keys()
+    {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != EMPTY)
+                result[n++] = keys[i];
+        return result;
+    }
+
+    private void rehash()
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = slot(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
@@ -4,10 +4,29 @@ public class MTRandom
 {
 
     private static MersenneTwister rand = new MersenneTwister();
+    // Master seed of the random streams, see streamSeed()
+    private static long masterSeed = System.nanoTime();
 
     public static void setSeed(long seed)
     {
         rand.setSeed(seed);
+        masterSeed = seed;
+    }
+
+    /**
+     * Seed (for MersenneTwister.setSeed(int[])) of the random stream
+     * identified by the given keys, e.g. sweep and document. It depends only
+     * on the keys and the last seed given to setSeed(), not on how many
+     * numbers have been drawn, so parallel workers can draw from per-document
+     * streams in any order.
+     */
+    public static int[] streamSeed(int... keys)
+    {
+        int[] seed = new int[keys.length + 2];
+        seed[0] = (int) masterSeed;
+        seed[1] = (int) (masterSeed >>> 32);
+        System.arraycopy(keys, 0, seed, 2, keys.length);
+        return seed;
     }
 
     public static double nextDouble()
@@ -0,0 +1,107 @@
+package utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential access to a file of any size through memory-mapped windows.
+ * A single mapping is limited to 2GB, so the file is mapped one window at a
+ * time; a reader moving forward remaps once per window and otherwise works
+ * on the mapped pages, leaving the I/O to the operating system's read-ahead
+ * and write-back.
+ */
+public class MappedFile
+    implements Closeable
+{
+    private static final long DEFAULT_WINDOW_SIZE = 64L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+
+    /**
+     * Open a file read-only, or read-write when writable
+     */
+    public MappedFile(String path, boolean writable)
+        throws IOException
+    {
+        this(path, writable, -1, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Open a file, setting its length to size bytes when size >= 0
+     */
+    public MappedFile(String path, boolean writable, long size, long inWindowSize)
+        throws IOException
+    {
+        file = new RandomAccessFile(path, writable ? "rw" : "r");
+        if (size >= 0)
+            file.setLength(size);
+        channel = file.getChannel();
+        mode = writable ? FileChannel.MapMode.READ_WRITE
+            : FileChannel.MapMode.READ_ONLY;
+        windowSize = inWindowSize;
+    }
+
+    public long size()
+        throws IOException
+    {
+        return channel.size();
+    }
+
+    /**
+     * A buffer covering bytes [position, position + length) of the file,
+     * positioned at position
+     */
+    public MappedByteBuffer window(long position, int length)
+        throws IOException
+    {
+        if ((window == null) || (position < windowStart)
+            || (position + length > windowEnd)) {
+            // The pages of the old window are written back by the operating
+            // system; flush() makes them durable
+            long end = Math.min(channel.size(),
+                position + Math.max(windowSize, length));
+            if (position + length > end)
+                throw new IOException("Read past the end of the file: "
+                    + (position + length) + " > " + channel.size());
+            window = channel.map(mode, position, end - position);
+            windowStart = position;
+            windowEnd = end;
+        }
+        window.position((int) (position - windowStart));
+        return window;
+    }
+
+    /**
+     * Write the changes of all windows so far back to the disk
+     */
+    public void flush()
+        throws IOException
+    {
+        if (mode != FileChannel.MapMode.READ_WRITE)
+            return;
+        if (window != null)
+            window.force();
+        // Also syncs the pages of the earlier windows
+        channel.force(false);
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        flush();
+        window = null;
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,264 @@
+package utility;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Interns terms into dense IDs (0, 1, ... in order of first insertion) with
+ * an open-addressing table over one shared character pool, so that neither
+ * lookups nor insertions create a String per term. Terms are given as
+ * character slices or CharSequences; with lowerCase, every character is
+ * lower-cased (Character.toLowerCase) as it is hashed, compared and stored.
+ *
+ * The preprocessing tools and the samplers use it to map words to IDs, and
+ * readCorpus() loads a text or binary corpus into one ID space. Lookups
+ * from several threads are safe once no more terms are added.
+ */
+public class TermIndex
+{
+    private final boolean lowerCase;
+
+    private char[] pool = new char[1 << 12];
+    // Term i is pool[offsets[i], offsets[i + 1])
+    private int[] offsets = new int[257];
+    private int[] hashes = new int[256];
+    private int size;
+
+    // Term ID + 1 per slot, 0 for an empty slot
+    private int[] table = new int[512];
+    private int mask = 511;
+
+    public TermIndex(boolean inLowerCase)
+    {
+        lowerCase = inLowerCase;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The ID of the term, or -1 if it is not in the index
+     */
+    public int id(char[] chars, int start, int length)
+    {
+        int hash = hash(chars, start, length);
+        int slot = hash & mask;
+        for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask)
+            if ((hashes[entry - 1] == hash)
+                && equals(entry - 1, chars, start, length))
+                return entry - 1;
+        return -1;
+    }
+
+    public int id(CharSequence term)
+    {
+        char[] chars = toChars(term);
+        return id(chars, 0, chars.length);
+    }
+
+    /**
+     * The ID of the term, adding it if it is not in the index
+     */
+    public int intern(char[] chars, int start, int length)
+    {
+        int hash = hash(chars, start, length);
+        int slot = hash & mask;
+        for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask)
+            if ((hashes[entry - 1] == hash)
+                && equals(entry - 1, chars, start, length))
+                return entry - 1;
+
+        int id = size++;
+        if (id == hashes.length) {
+            hashes = Arrays.copyOf(hashes, 2 * id);
+            offsets = Arrays.copyOf(offsets, 2 * id + 1);
+        }
+        int offset = offsets[id];
+        if (offset + length > pool.length)
+            pool = Arrays.copyOf(pool, Math.max(2 * pool.length, offset
+                + length));
+        for (int k = 0; k < length; k++)
+            pool[offset + k] = normalize(chars[start + k]);
+        offsets[id + 1] = offset + length;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        if (2 * size > table.length)
+            rehash();
+        return id;
+    }
+
+    public int intern(CharSequence term)
+    {
+        char[] chars = toChars(term);
+        return intern(chars, 0, chars.length);
+    }
+
+    /**
+     * The term with the given ID, as a new String
+     */
+    public String term(int id)
+    {
+        return new String(pool, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    /**
+     * Write the term with the given ID without creating a String
+     */
+    public void write(int id, Writer writer)
+        throws IOException
+    {
+        writer.write(pool, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    private char normalize(char c)
+    {
+        return lowerCase ? Character.toLowerCase(c) : c;
+    }
+
+    private int hash(char[] chars, int start, int length)
+    {
+        int h = 0;
+        for (int k = start; k < start + length; k++)
+            h = 31 * h + normalize(chars[k]);
+        // Spread the bits of String-like hashes over the table
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean equals(int id, char[] chars, int start, int length)
+    {
+        int offset = offsets[id];
+        if (offsets[id + 1] - offset != length)
+            return false;
+        for (int k = 0; k < length; k++)
+            if (pool[offset + k] != normalize(chars[start + k]))
+                return false;
+        return true;
+    }
+
+    private void rehash()
+    {
+        table = new int[2 * table.length];
+        mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+
+    private static char[] toChars(CharSequence term)
+    {
+        char[] chars = new char[term.length()];
+        for (int k = 0; k < chars.length; k++)
+            chars[k] = term.charAt(k);
+        return chars;
+    }
+
+    /**
+     * Receives the non-empty documents of a corpus in order; the word IDs
+     * are only valid during the call
+     */
+    public interface DocumentHandler
+    {
+        public void document(int[] words, int length)
+            throws IOException;
+    }
+
+    /**
+     * Read a corpus into this index and pass its documents as word IDs to
+     * the handler; words new to the index get the next IDs.
+     *
+     * A text corpus (one document per line, words separated by white space)
+     * is scanned without creating Strings, and words get IDs in order of
+     * first occurrence. A binary corpus ending in ".bin" (see BinaryCorpus)
+     * already holds these IDs; only its vocabulary file is interned, and the
+     * documents are passed on without hashing (as they are if the index
+     * starts empty).
+     */
+    public void readCorpus(String pathToCorpus, DocumentHandler handler)
+        throws IOException
+    {
+        int[] words = new int[1024];
+        if (pathToCorpus.endsWith(".bin")) {
+            BinaryCorpus corpus = new BinaryCorpus(pathToCorpus);
+            try {
+                String[] id2Word = BinaryCorpus.readVocabulary(pathToCorpus
+                    .substring(0, pathToCorpus.length() - 4) + ".vocabulary",
+                    corpus.vocabularySize);
+                // Index ID of every corpus ID, null if they are the same
+                int[] ids = size > 0 ? new int[id2Word.length] : null;
+                for (int i = 0; i < id2Word.length; i++) {
+                    int id = intern(id2Word[i]);
+                    if (ids != null)
+                        ids[i] = id;
+                }
+                for (int d = 0; d < corpus.numDocuments; d++) {
+                    int length = corpus.nextLength();
+                    if (length > words.length)
+                        words = new int[2 * length];
+                    corpus.read(words, length);
+                    if (ids != null)
+                        for (int i = 0; i < length; i++)
+                            words[i] = ids[words[i]];
+                    if (length > 0)
+                        handler.document(words, length);
+                }
+            }
+            finally {
+                corpus.close();
+            }
+            return;
+        }
+
+        // The default charset, as FileReader
+        Reader reader = new InputStreamReader(new FileInputStream(
+            pathToCorpus));
+        try {
+            char[] buffer = new char[1 << 16];
+            int start = 0, end = 0, length = 0;
+            boolean eof = false;
+            while (!eof) {
+                int n = reader.read(buffer, end, buffer.length - end);
+                eof = n < 0;
+                int limit = eof ? end + 1 : end + n;
+                for (; end < limit; end++) {
+                    // A virtual line break ends the last document
+                    char c = end < limit - (eof ? 1 : 0) ? buffer[end] : '\n';
+                    if ((c != ' ') && (c != '\t') && (c != '\n')
+                        && (c != '\r') && (c != '\f') && (c != '\u000B'))
+                        continue;
+                    if (end > start) {
+                        if (length == words.length)
+                            words = Arrays.copyOf(words, 2 * length);
+                        words[length++] = intern(buffer, start, end - start);
+                    }
+                    start = end + 1;
+                    if (((c == '\n') || (c == '\r')) && (length > 0)) {
+                        handler.document(words, length);
+                        length = 0;
+                    }
+                }
+                if (eof)
+                    break;
+                int pending = end - start;
+                if (start > 0)
+                    System.arraycopy(buffer, start, buffer, 0, pending);
+                else if (pending == buffer.length)
+                    buffer = Arrays.copyOf(buffer, 2 * pending);
+                start = 0;
+                end = pending;
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package utility;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.process.DocumentPreprocessor;
+
+/**
+ * Splits the text of a file into terms for the preprocessing tools, which
+ * keep the runs of letters and digits of the text.
+ *
+ * alphanumeric() scans the characters directly. stanford() runs the Stanford
+ * PTB sentence splitter and tokenizer first and splits its tokens into runs,
+ * as the tools did before; its classes are only loaded when it is chosen.
+ * On ASCII letters and digits both give the same terms except where PTB
+ * rewrites the text: brackets become "-LRB-" and the like, and contractions
+ * are split before "n't".
+ */
+public interface Tokenizer
+{
+    /**
+     * Receives the terms of a file in order; the characters are only valid
+     * during the call
+     */
+    public interface TermHandler
+    {
+        public void term(char[] chars, int start, int length);
+    }
+
+    public void tokenize(File file, TermHandler handler)
+        throws IOException;
+
+    /**
+     * "ascii" (the default), "unicode" or "stanford"
+     */
+    public static Tokenizer create(String name)
+    {
+        if (name.equalsIgnoreCase("ascii"))
+            return alphanumeric(false);
+        if (name.equalsIgnoreCase("unicode"))
+            return alphanumeric(true);
+        if (name.equalsIgnoreCase("stanford"))
+            return stanford();
+        throw new IllegalArgumentException("Unknown tokenizer " + name
+            + ", expected ascii, unicode or stanford");
+    }
+
+    /**
+     * Runs of ASCII letters and digits, or of any letters and digits (see
+     * Character.isLetterOrDigit) with unicode, of the UTF-8 text
+     */
+    public static Tokenizer alphanumeric(final boolean unicode)
+    {
+        return new Tokenizer()
+        {
+            @Override
+            public void tokenize(File file, TermHandler handler)
+                throws IOException
+            {
+                Reader reader = new InputStreamReader(new FileInputStream(file),
+                    StandardCharsets.UTF_8);
+                try {
+                    // Terms are kept at the front of the buffer across reads
+                    char[] buffer = new char[1 << 16];
+                    int start = 0, end = 0;
+                    for (int n; (n = reader.read(buffer, end, buffer.length
+                        - end)) > 0;) {
+                        for (int limit = end + n; end < limit; end++) {
+                            if (!isTermChar(buffer[end], unicode)) {
+                                if (end > start)
+                                    handler.term(buffer, start, end - start);
+                                start = end + 1;
+                            }
+                        }
+                        int length = end - start;
+                        if (start > 0)
+                            System.arraycopy(buffer, start, buffer, 0, length);
+                        else if (length == buffer.length)
+                            buffer = Arrays.copyOf(buffer, 2 * length);
+                        start = 0;
+                        end = length;
+                    }
+                    if (end > start)
+                        handler.term(buffer, start, end - start);
+                }
+                finally {
+                    reader.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs of ASCII letters and digits of the tokens of the Stanford PTB
+     * tokenizer
+     */
+    public static Tokenizer stanford()
+    {
+        return new Tokenizer()
+        {
+            @Override
+            public void tokenize(File file, TermHandler handler)
+                throws IOException
+            {
+                char[] chars = new char[64];
+                DocumentPreprocessor dp = new DocumentPreprocessor(
+                    file.getAbsolutePath());
+                for (List<?> sentence : dp) {
+                    for (Object token : sentence) {
+                        String text = token.toString();
+                        if (text.length() > chars.length)
+                            chars = new char[2 * text.length()];
+                        text.getChars(0, text.length(), chars, 0);
+                        int start = 0;
+                        for (int k = 0; k < text.length(); k++) {
+                            if (!isTermChar(chars[k], false)) {
+                                if (k > start)
+                                    handler.term(chars, start, k - start);
+                                start = k + 1;
+                            }
+                        }
+                        if (text.length() > start)
+                            handler.term(chars, start, text.length() - start);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * True for the characters of terms
+     */
+    public static boolean isTermChar(char c, boolean unicode)
+    {
+        if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))
+            || ((c >= '0') && (c <= '9')))
+            return true;
+        return unicode && (c >= 0x80) && Character.isLetterOrDigit(c);
+    }
+}
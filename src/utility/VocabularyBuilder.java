@@ -0,0 +1,333 @@
+package utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Builds the word list and the corpus in one pass over the dataset, in
+ * place of WordListGenerator followed by CorpusGenerator.
+ *
+ * Every file is tokenized once (by default into runs of ASCII letters and
+ * digits, see Tokenizer) and its terms are lower-cased; stop words are
+ * dropped and the remaining terms are numbered and spooled to a temporary
+ * file as term IDs, while their corpus and document frequencies are counted
+ * in arrays indexed by term ID. A term enters the
+ * vocabulary if one of its occurrences is in Dictionary.txt or
+ * ISdictionary.txt (as in WordListGenerator) and it survives the pruning:
+ * at least minCount occurrences, in at most maxDocumentShare of the
+ * documents, and among the topN most frequent terms (0 = no limit). The
+ * spool is then filtered into corpus.txt, documentsList.txt, WordList.txt
+ * and, unless disabled, corpus.txt.bin and corpus.txt.vocabulary (see
+ * BinaryCorpus), which OutOfCoreSWB reads without converting.
+ *
+ * Without pruning, corpus.txt is the corpus the two tools build, with the
+ * files in name order.
+ *
+ * Usage: java utility.VocabularyBuilder [-mincount n] [-maxdf share] [-topn
+ * n] [-binary true|false] [-tokenizer ascii|unicode|stanford]
+ */
+public class VocabularyBuilder
+{
+    public File datasetFolder = new File("security_corpus/cve/");
+    public String stopWordsPath = "data/StopWords.txt";
+    public String dictionaryPath = "data/Dictionary.txt";
+    public String isDictionaryPath = "data/ISdictionary.txt";
+    public String wordListPath = "data/WordList.txt";
+    public String documentsListPath = "data/documentsList.txt";
+    public String corpusPath = "data/corpus.txt";
+
+    public int minCount = 1;
+    public double maxDocumentShare = 1.0;
+    public int topN = 0;
+    public boolean binary = true;
+    public Tokenizer tokenizer = Tokenizer.alphanumeric(false);
+
+    // Lower-case stop words, and the dictionary terms as written
+    private TermIndex stopwords;
+    private TermIndex dictionary;
+
+    // Lower-cased terms, numbered in order of first occurrence
+    private TermIndex termIndex = new TermIndex(true);
+    private long[] termCounts = new long[1024];
+    private int[] documentCounts = new int[1024];
+    private int[] lastDocuments = new int[1024];
+    private boolean[] inDictionary = new boolean[1024];
+    private int numFiles;
+
+    // Term IDs of the current file
+    private int[] terms = new int[1024];
+    private int numFileTerms;
+
+    public void build()
+        throws IOException
+    {
+        stopwords = new TermIndex(true);
+        for (String word : FileUtils.readLines(new File(stopWordsPath),
+            Charsets.UTF_8))
+            // Terms are lower-cased before the stop words are checked
+            if (word.equals(word.toLowerCase()))
+                stopwords.intern(word);
+        dictionary = new TermIndex(false);
+        for (String word : FileUtils.readLines(new File(dictionaryPath),
+            Charsets.UTF_8))
+            dictionary.intern(word);
+        for (String word : FileUtils.readLines(new File(isDictionaryPath),
+            Charsets.UTF_8))
+            dictionary.intern(word);
+
+        File spool = File.createTempFile("corpus", ".spool", new File(
+            corpusPath).getAbsoluteFile().getParentFile());
+        spool.deleteOnExit();
+        try {
+            tokenize(spool);
+            boolean[] kept = prune();
+            write(spool, kept);
+        }
+        finally {
+            spool.delete();
+        }
+    }
+
+    /**
+     * Tokenize every file once, spooling its name and term IDs
+     */
+    private void tokenize(File spool)
+        throws IOException
+    {
+        File[] listOfFiles = datasetFolder.listFiles();
+        Arrays.sort(listOfFiles);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(spool), 1 << 16));
+        try {
+            for (File file : listOfFiles) {
+                if (!file.isFile())
+                    continue;
+                numFileTerms = 0;
+                tokenizer.tokenize(file, new Tokenizer.TermHandler()
+                {
+                    @Override
+                    public void term(char[] chars, int start, int length)
+                    {
+                        int id = count(chars, start, length);
+                        if (id < 0)
+                            return;
+                        if (numFileTerms == terms.length)
+                            terms = Arrays.copyOf(terms, 2 * numFileTerms);
+                        terms[numFileTerms++] = id;
+                    }
+                });
+                out.writeUTF(file.getName());
+                out.writeInt(numFileTerms);
+                for (int i = 0; i < numFileTerms; i++)
+                    out.writeInt(terms[i]);
+                numFiles++;
+            }
+        }
+        finally {
+            out.close();
+        }
+        System.out.println("Tokenized " + numFiles + " files, "
+            + termIndex.size() + " distinct terms");
+    }
+
+    /**
+     * Count an occurrence of a term in the current file
+     *
+     * @return the term ID, or -1 for a stop word
+     */
+    private int count(char[] chars, int start, int length)
+    {
+        int id = termIndex.id(chars, start, length);
+        if (id < 0) {
+            if (stopwords.id(chars, start, length) >= 0)
+                return -1;
+            id = termIndex.intern(chars, start, length);
+            if (id == termCounts.length) {
+                termCounts = Arrays.copyOf(termCounts, 2 * id);
+                documentCounts = Arrays.copyOf(documentCounts, 2 * id);
+                lastDocuments = Arrays.copyOf(lastDocuments, 2 * id);
+                inDictionary = Arrays.copyOf(inDictionary, 2 * id);
+            }
+            lastDocuments[id] = -1;
+        }
+        termCounts[id]++;
+        if (lastDocuments[id] != numFiles) {
+            lastDocuments[id] = numFiles;
+            documentCounts[id]++;
+        }
+        // The dictionaries are matched before lower-casing
+        if (!inDictionary[id] && (dictionary.id(chars, start, length) >= 0))
+            inDictionary[id] = true;
+        return id;
+    }
+
+    /**
+     * Select the vocabulary
+     */
+    private boolean[] prune()
+    {
+        int numTerms = termIndex.size();
+        boolean[] kept = new boolean[numTerms];
+        List<Integer> candidates = new ArrayList<Integer>();
+        double maxDocuments = maxDocumentShare * numFiles;
+        for (int id = 0; id < numTerms; id++)
+            if (inDictionary[id] && (termCounts[id] >= minCount)
+                && (documentCounts[id] <= maxDocuments))
+                candidates.add(id);
+
+        if ((topN > 0) && (candidates.size() > topN)) {
+            // Most frequent first, ties in alphabetical order
+            Collections.sort(candidates, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(Integer id1, Integer id2)
+                {
+                    int order = Long.compare(termCounts[id2], termCounts[id1]);
+                    return order != 0 ? order : termIndex.term(id1).compareTo(
+                        termIndex.term(id2));
+                }
+            });
+            candidates = candidates.subList(0, topN);
+        }
+        for (int id : candidates)
+            kept[id] = true;
+        System.out.println("Vocabulary: " + candidates.size() + " of "
+            + numTerms + " terms");
+        return kept;
+    }
+
+    /**
+     * Filter the spooled documents into the outputs
+     */
+    private void write(File spool, boolean[] kept)
+        throws IOException
+    {
+        String binaryPath = corpusPath + ".bin";
+        // Word IDs of the binary corpus, numbered by first occurrence in the
+        // filtered corpus as the samplers do
+        int[] wordIds = new int[kept.length];
+        Arrays.fill(wordIds, -1);
+        List<String> id2Word = new ArrayList<String>();
+        int numDocuments = 0;
+        long numWords = 0;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(spool), 1 << 16));
+        BufferedWriter corpusWriter = new BufferedWriter(new FileWriter(
+            corpusPath), 1 << 16);
+        BufferedWriter documentsListWriter = new BufferedWriter(new FileWriter(
+            documentsListPath));
+        DataOutputStream binaryWriter = binary ? new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(binaryPath), 1 << 16))
+            : null;
+        try {
+            if (binary)
+                binaryWriter.write(new byte[BinaryCorpus.HEADER_SIZE]);
+            int[] words = new int[1024];
+            for (int i = 0; i < numFiles; i++) {
+                String name = in.readUTF();
+                int length = in.readInt();
+                int numKept = 0;
+                for (int j = 0; j < length; j++) {
+                    int id = in.readInt();
+                    if (!kept[id])
+                        continue;
+                    if (numKept == words.length)
+                        words = Arrays.copyOf(words, 2 * numKept);
+                    words[numKept++] = id;
+                }
+                if (numKept == 0) {
+                    System.err.println("Document " + name + " is empty");
+                    continue;
+                }
+                documentsListWriter.write(name);
+                documentsListWriter.newLine();
+                for (int j = 0; j < numKept; j++) {
+                    termIndex.write(words[j], corpusWriter);
+                    corpusWriter.write(' ');
+                }
+                corpusWriter.newLine();
+                if (binary) {
+                    binaryWriter.writeInt(numKept);
+                    for (int j = 0; j < numKept; j++) {
+                        int id = words[j];
+                        if (wordIds[id] < 0) {
+                            wordIds[id] = id2Word.size();
+                            id2Word.add(termIndex.term(id));
+                        }
+                        binaryWriter.writeInt(wordIds[id]);
+                    }
+                }
+                numDocuments++;
+                numWords += numKept;
+            }
+        }
+        finally {
+            in.close();
+            corpusWriter.close();
+            documentsListWriter.close();
+            if (binary)
+                binaryWriter.close();
+        }
+
+        List<String> wordList = new ArrayList<String>();
+        for (int id = 0; id < kept.length; id++)
+            if (kept[id])
+                wordList.add(termIndex.term(id));
+        Collections.sort(wordList);
+        BufferedWriter wordListWriter = new BufferedWriter(new FileWriter(
+            wordListPath));
+        try {
+            for (String word : wordList)
+                wordListWriter.write(word + "\n");
+        }
+        finally {
+            wordListWriter.close();
+        }
+
+        if (binary) {
+            BinaryCorpus.writeHeader(binaryPath, numDocuments, id2Word.size(),
+                numWords);
+            BinaryCorpus.writeVocabulary(corpusPath + ".vocabulary", id2Word);
+        }
+        System.out.println(numDocuments + " documents, " + numWords
+            + " words written to " + corpusPath);
+    }
+
+    public static void main(String[] args)
+        throws IOException
+    {
+        VocabularyBuilder builder = new VocabularyBuilder();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-mincount"))
+                builder.minCount = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-maxdf"))
+                builder.maxDocumentShare = Double.parseDouble(args[i + 1]);
+            else if (args[i].equals("-topn"))
+                builder.topN = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-binary"))
+                builder.binary = Boolean.parseBoolean(args[i + 1]);
+            else if (args[i].equals("-tokenizer"))
+                builder.tokenizer = Tokenizer.create(args[i + 1]);
+            else
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+        builder.build();
+    }
+}
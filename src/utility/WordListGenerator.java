@@ -8,19 +8,21 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
 
-import edu.stanford.nlp.ling.Word;
-import edu.stanford.nlp.process.DocumentPreprocessor;
-import edu.stanford.nlp.process.PTBTokenizer;
-
 public class WordListGenerator {
 	private static File dataset_folder = new File("security_corpus/cve/");
 	private static Set<String> stopwords = null;
@@ -28,53 +30,111 @@ public class WordListGenerator {
 	private static Set<String> Dictionary = null;
 	private static Set<String> ISdictionary = null;
 	
+	// Flags of the terms of the classification table
+	private static final int STOP = 1;
+	private static final int ENGLISH = 2;
+	private static final int SECURITY = 4;
+	/** The dictionary terms, as found in the text, and their flags by term
+	 * ID; STOP marks terms whose lower case is a stop word **/
+	private static TermIndex terms = null;
+	private static int[] termFlags = null;
+
 	public static void main(String[] args) {
 
 		try {
 			stopwords = new HashSet<String>(FileUtils.readLines(new File("data/StopWords.txt"), Charsets.UTF_8));
 			Dictionary = new HashSet<String>(FileUtils.readLines(new File("data/Dictionary.txt"), Charsets.UTF_8));
 			ISdictionary = new HashSet<String>(FileUtils.readLines(new File("data/ISdictionary.txt"), Charsets.UTF_8));
+			classifyTerms();
 		//	PorterStemmer stemmer = new PorterStemmer();
-			boolean found = false;
 			File[] listOfFiles = dataset_folder.listFiles();
-			String line = null;
-			boolean flag = false;
+
+			// args[0]: ascii (default), unicode or stanford, see Tokenizer
+			Tokenizer tokenizer = Tokenizer.create(args.length > 0 ? args[0] : "ascii");
+			int numThreads = Runtime.getRuntime().availableProcessors();
+			WordList.addAll(scan(listOfFiles, tokenizer, numThreads));
+			generatingWordList(WordList);
 			
-			for (int i = 0; i < listOfFiles.length; i++) {
-				System.out.println("Parsing file: "+listOfFiles[i].getName());
-				File file = listOfFiles[i];
-				if (file.isFile()) {
-					// Stanford CoreNLP for analyzing each document: splitting sentences, tokanizing, etc. 
-					DocumentPreprocessor dp = new DocumentPreprocessor(file.getAbsolutePath());
-					for (List sentence : dp) {
-						for (int j = 0; j < sentence.size(); j++) {
-							String terms = sentence.get(j).toString();
-							String cleanTerm = terms.replaceAll("[^a-zA-Z0-9]+", "!!");
-							String[] tokens = cleanTerm.split("!!");
-							if (tokens.length > 0) {
-								for(String term : tokens){
-									if (!containsstopword(term.toString().toLowerCase())
-											&& (!term.isEmpty())) {
-										if (termInDictionary(term)
-												|| termInISdictionary(term)) {
-										//	String word = stemmer.stemming(term.toString().toLowerCase());
-											WordList.add(term.toLowerCase());
-										}
-									//	WordList.add(term.toLowerCase());
-									}
-								}
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Build the term classification table: a term found in the text needs
+	 * one lookup to know whether it belongs to the word list
+	 */
+	private static void classifyTerms() {
+		terms = new TermIndex(false);
+		termFlags = new int[Dictionary.size() + ISdictionary.size()];
+		for (String term : Dictionary)
+			termFlags[terms.intern(term)] |= ENGLISH;
+		for (String term : ISdictionary)
+			termFlags[terms.intern(term)] |= SECURITY;
+		for (int id = 0; id < terms.size(); id++)
+			if (stopwords.contains(terms.term(id).toLowerCase()))
+				termFlags[id] |= STOP;
+	}
+
+	/**
+	 * The word list of the files, scanned on numThreads threads: every
+	 * thread takes every numThreads-th file and marks the dictionary terms
+	 * it finds in its own array, and the arrays are merged at the end
+	 */
+	public static Set<String> scan(final File[] listOfFiles,
+			final Tokenizer tokenizer, final int numThreads) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		List<Future<boolean[]>> results = new ArrayList<Future<boolean[]>>();
+		for (int t = 0; t < numThreads; t++) {
+			final int first = t;
+			results.add(pool.submit(new Callable<boolean[]>() {
+				@Override
+				public boolean[] call() throws IOException {
+					final boolean[] found = new boolean[terms.size()];
+					Tokenizer.TermHandler handler = new Tokenizer.TermHandler() {
+						@Override
+						public void term(char[] chars, int start, int length) {
+							int id = terms.id(chars, start, length);
+							if (id >= 0 && (termFlags[id] & STOP) == 0
+									&& (termFlags[id] & (ENGLISH | SECURITY)) != 0) {
+							//	String word = stemmer.stemming(term.toString().toLowerCase());
+								found[id] = true;
 							}
 						}
+					};
+					for (int i = first; i < listOfFiles.length; i += numThreads) {
+						File file = listOfFiles[i];
+						System.out.println("Parsing file: "+file.getName());
+						if (file.isFile())
+							tokenizer.tokenize(file, handler);
 					}
+					return found;
 				}
+			}));
+		}
+
+		boolean[] found = new boolean[terms.size()];
+		try {
+			for (Future<boolean[]> result : results) {
+				boolean[] threadFound = result.get();
+				for (int id = 0; id < found.length; id++)
+					found[id] |= threadFound[id];
 			}
-			
-			generatingWordList(WordList);
-			
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
 		}
+		Set<String> wordList = new HashSet<String>();
+		for (int id = 0; id < found.length; id++)
+			if (found[id])
+				wordList.add(terms.term(id).toLowerCase());
+		return wordList;
 	}
 	
 	/**